@@ -0,0 +1,126 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decode/stream throughput of a 10 s, 48 kHz stereo episode through each AudioPlayer path,
+ * plus a full offline session rendered through the mixer into a MemorySink.
+ * Score is time per whole file; divide 10 s by it for the realtime factor.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AudioDecodeBenchmark {
+
+    private Path dir;
+    private Path wav;
+    private Path wav44k;
+    private PcmCache cache;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("hr_bench_audio_");
+        wav = BenchFixtures.writeWav(dir.resolve("episode.wav"), 10, 48000, 2);
+        wav44k = BenchFixtures.writeWav(dir.resolve("episode44k.wav"), 10, 44100, 2);
+        cache = new PcmCache(64L << 20, false);
+        cache.get(wav); // warm
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchFixtures.delete(dir);
+    }
+
+    /** The original path: Java Sound decode + 16-bit conversion + 4 KiB copy loop. */
+    @Benchmark
+    public long javaSoundStream() throws Exception {
+        long sum = 0;
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(wav.toFile())) {
+            AudioFormat decoded = AudioPlayer.toPcm16(in.getFormat());
+            try (AudioInputStream din = AudioSystem.getAudioInputStream(decoded, in)) {
+                byte[] buffer = new byte[4096];
+                int n;
+                while ((n = din.read(buffer, 0, buffer.length)) > 0) sum += buffer[n - 1];
+            }
+        }
+        return sum;
+    }
+
+    /** Memory-mapped WavFile, windows handed out without copying. */
+    @Benchmark
+    public long mappedStream() throws Exception {
+        long sum = 0;
+        try (PcmSource src = WavFile.open(wav).source()) {
+            ByteBuffer b;
+            while ((b = src.next(AudioMixer.BUFFER_FRAMES)) != null) sum += b.get(b.limit() - 1);
+        }
+        return sum;
+    }
+
+    /** 44.1 kHz file converted to the 48 kHz device format by the windowed-sinc resampler. */
+    @Benchmark
+    public long resampledStream() throws Exception {
+        long sum = 0;
+        try (PcmSource src = ResamplingSource.toMixerFormat(WavFile.open(wav44k).source(), 44100)) {
+            ByteBuffer b;
+            while ((b = src.next(AudioMixer.BUFFER_FRAMES)) != null) sum += b.get(b.limit() - 1);
+        }
+        return sum;
+    }
+
+    /** Decoded clip served from the PcmCache (hit). */
+    @Benchmark
+    public long cachedClip() throws Exception {
+        long sum = 0;
+        try (PcmSource src = PcmSource.of(cache.get(wav))) {
+            ByteBuffer b;
+            while ((b = src.next(AudioMixer.BUFFER_FRAMES)) != null) sum += b.get(b.limit() - 1);
+        }
+        return sum;
+    }
+
+    /** 10 s of synthesized static (pink noise with crackle) in place of decoding a static file. */
+    @Benchmark
+    public float[] synthesizedStatic() {
+        float[] mix = new float[AudioMixer.BUFFER_FRAMES * AudioMixer.CHANNELS];
+        StaticNoise noise = new StaticNoise(StaticNoise.Color.PINK, 12f, 1f, 42, 10L * 48000);
+        while (noise.mix(mix, AudioMixer.BUFFER_FRAMES, 1f) == AudioMixer.BUFFER_FRAMES) {
+            // keeps adding into the same buffer, as the mixer would
+        }
+        return mix;
+    }
+
+    /** Mapped file mixed to 16-bit output buffers, as the audio thread does it. */
+    @Benchmark
+    public void mixToOutput(Blackhole bh) {
+        AudioMixer mixer = new AudioMixer();
+        byte[] out = new byte[AudioMixer.bufferBytes()];
+        mixer.add(new PcmVoice(WavFile.open(wav).source(), 1f));
+        while (mixer.isActive()) {
+            mixer.render(out);
+            bh.consume(out);
+        }
+    }
+
+    /** Whole playWavForMillis call through the scheduler into an offline MemorySink. */
+    @Benchmark
+    public long offlineSession() {
+        MemorySink sink = MemorySink.discarding(false);
+        AudioPlayer player = new AudioPlayer(sink);
+        player.playWavForMillis(wav, 10_000);
+        player.getScheduler().close();
+        return sink.frames();
+    }
+}
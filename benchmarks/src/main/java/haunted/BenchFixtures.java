@@ -0,0 +1,81 @@
+package haunted;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Random;
+
+/** Synthetic audio files and libraries for the benchmarks (written to temp dirs). */
+final class BenchFixtures {
+    private BenchFixtures() {}
+
+    /** Write a 16-bit PCM WAV of band-limited noise. */
+    static Path writeWav(Path file, double seconds, int rate, int channels) throws IOException {
+        javax.sound.sampled.AudioFormat fmt = new javax.sound.sampled.AudioFormat(rate, 16, channels, true, false);
+        int frames = (int) (seconds * rate);
+        byte[] data = new byte[frames * channels * 2];
+        Random rng = new Random(42);
+        int s = 0;
+        for (int i = 0; i < data.length; i += 2) {
+            s = (s * 7 + rng.nextInt(8000) - 4000) / 8;
+            data[i] = (byte) s;
+            data[i + 1] = (byte) (s >> 8);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(WavFileSink.header(fmt, data.length));
+            out.write(data);
+        }
+        return file;
+    }
+
+    /** A folder with {@code wavs} tiny .wav files plus a few other files to skip. */
+    static Path library(int wavs) throws IOException {
+        Path root = Files.createTempDirectory("hr_bench_lib_");
+        Path dir = Files.createDirectories(root.resolve("spanish_podcast"));
+        byte[] header = WavFileSink.header(new javax.sound.sampled.AudioFormat(48000, 16, 2, true, false), 0);
+        for (int i = 0; i < wavs; i++) {
+            Files.write(dir.resolve(String.format("episode_%05d.wav", i)), header);
+            if (i % 10 == 0) Files.write(dir.resolve(String.format("notes_%05d.txt", i)), new byte[0]);
+        }
+        return root;
+    }
+
+    /**
+     * A tree of {@code folders} channel folders holding {@code wavs} header-only .wav files in
+     * total (alternating 44.1 and 48 kHz), plus a few other files to skip.
+     */
+    static Path libraryTree(int wavs, int folders) throws IOException {
+        Path root = Files.createTempDirectory("hr_bench_tree_");
+        byte[][] headers = {
+                WavFileSink.header(new javax.sound.sampled.AudioFormat(44100, 16, 2, true, false), 0),
+                WavFileSink.header(new javax.sound.sampled.AudioFormat(48000, 16, 1, true, false), 0)
+        };
+        Path[] dirs = new Path[folders];
+        for (int f = 0; f < folders; f++) dirs[f] = Files.createDirectories(root.resolve(String.format("channel_%03d", f)));
+        for (int i = 0; i < wavs; i++) {
+            Path dir = dirs[i % folders];
+            Files.write(dir.resolve(String.format("episode_%05d.wav", i)), headers[i & 1]);
+            if (i % 100 == 0) Files.write(dir.resolve(String.format("cover_%05d.jpg", i)), new byte[0]);
+        }
+        return root;
+    }
+
+    /** Recursively delete a temp fixture. */
+    static void delete(Path root) throws IOException {
+        if (root == null || !Files.exists(root)) return;
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            @Override public FileVisitResult visitFile(Path f, BasicFileAttributes a) throws IOException {
+                Files.delete(f);
+                return FileVisitResult.CONTINUE;
+            }
+            @Override public FileVisitResult postVisitDirectory(Path d, IOException e) throws IOException {
+                Files.delete(d);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
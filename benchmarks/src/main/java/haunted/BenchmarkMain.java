@@ -0,0 +1,27 @@
+package haunted;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Entry point of benchmarks.jar: plain JMH, but results default to JSON in jmh-result.json
+ * so runs can be diffed between releases. Any JMH option can still be passed, e.g.
+ *   java -jar benchmarks/target/benchmarks.jar MorseBenchmark -rff morse.json
+ */
+public final class BenchmarkMain {
+    private BenchmarkMain() {}
+
+    public static void main(String[] args) throws Exception {
+        List<String> all = new ArrayList<>(Arrays.asList(args));
+        if (!all.contains("-rf")) {
+            all.add("-rf");
+            all.add("json");
+        }
+        if (!all.contains("-rff")) {
+            all.add("-rff");
+            all.add("jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(all.toArray(new String[0]));
+    }
+}
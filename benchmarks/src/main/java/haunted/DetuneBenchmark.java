@@ -0,0 +1,53 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the DetuneStage on one mixer buffer (1024 stereo frames at 48 kHz, ~21.3 ms of
+ * audio) with the knob dead on a station, part way off and halfway between two, while
+ * it is being dragged (the detune ramps every buffer). 5% of one core is ~1067 µs/buffer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DetuneBenchmark {
+
+    @Param({"0", "0.3", "1"})
+    public float detune;
+
+    private final DetuneStage stage = new DetuneStage();
+    private final float[] program = new float[AudioMixer.BUFFER_FRAMES * AudioMixer.CHANNELS];
+    private final float[] buf = new float[program.length];
+    private boolean wobble;
+
+    @Setup
+    public void setup() {
+        Random rng = new Random(7);
+        for (int i = 0; i < program.length; i++) program[i] = (rng.nextFloat() - 0.5f) * 0.5f;
+        stage.setDetune(detune);
+    }
+
+    /** Knob held still. */
+    @Benchmark
+    public float[] steady() {
+        System.arraycopy(program, 0, buf, 0, buf.length);
+        stage.apply(buf, AudioMixer.BUFFER_FRAMES);
+        return buf;
+    }
+
+    /** Knob being dragged: a new target every buffer, so every frame is ramped. */
+    @Benchmark
+    public float[] dragged() {
+        wobble = !wobble;
+        stage.setDetune(wobble ? detune : detune * 0.9f + 0.05f);
+        System.arraycopy(program, 0, buf, 0, buf.length);
+        stage.apply(buf, AudioMixer.BUFFER_FRAMES);
+        return buf;
+    }
+}
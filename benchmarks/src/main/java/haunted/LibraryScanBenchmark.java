@@ -0,0 +1,62 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup cost of the episode library over synthetic libraries of 10–10,000 episodes:
+ * listing the folder versus reading the persisted ChannelLibrary index, and a full rescan
+ * (a stat per file) of an up-to-date library.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryScanBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int files;
+
+    private Path root;
+    private ChannelManagerSwing manager;
+    private ChannelLibrary library;
+    private Path index;
+
+    @Setup
+    public void setup() throws Exception {
+        System.setProperty("haunted.library.dir", ""); // keep the manager's index out of the home folder
+        root = BenchFixtures.library(files);
+        manager = new ChannelManagerSwing(root);
+        index = root.resolve("library.idx");
+        library = new ChannelLibrary(root.resolve("spanish_podcast"), index);
+        library.rescan();
+        library.save();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        BenchFixtures.delete(root);
+    }
+
+    @Benchmark
+    public List<Path> listWavsInFolder() {
+        return manager.listWavsInFolder("audio/spanish_podcast");
+    }
+
+    @Benchmark
+    public List<ChannelLibrary.Episode> loadLibraryIndex() {
+        ChannelLibrary fresh = new ChannelLibrary(root.resolve("spanish_podcast"), index);
+        fresh.load();
+        return fresh.episodes();
+    }
+
+    @Benchmark
+    public boolean rescanUnchangedLibrary() {
+        return library.rescan();
+    }
+}
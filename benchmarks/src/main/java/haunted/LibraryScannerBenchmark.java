@@ -0,0 +1,76 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.sound.sampled.AudioFileFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Files per second when scanning a synthetic 50,000-file tree (100 channel folders):
+ * LibraryScanner's header-only fork-join walk with 1 worker and with one per core, against
+ * reading each file's format through Java Sound. Warm page cache after the first iteration.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(LibraryScannerBenchmark.FILES)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryScannerBenchmark {
+
+    static final int FILES = 50_000;
+    private static final int FOLDERS = 100;
+
+    /** Scanner workers; 0 = one per core. */
+    @Param({"1", "0"})
+    public int threads;
+
+    private Path root;
+    private LibraryScanner scanner;
+    private List<Path> files;
+
+    @Setup
+    public void setup() throws Exception {
+        root = BenchFixtures.libraryTree(FILES, FOLDERS);
+        scanner = new LibraryScanner(threads);
+        try (Stream<Path> s = Files.walk(root)) {
+            files = s.filter(p -> p.toString().endsWith(".wav")).collect(Collectors.toList());
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        scanner.shutdown();
+        BenchFixtures.delete(root);
+    }
+
+    @Benchmark
+    public Map<String, List<Path>> headerScan() {
+        LibraryScanner.ChannelLists lists = new LibraryScanner.ChannelLists(root, 256);
+        scanner.scan(root, 8, lists);
+        return lists.lists();
+    }
+
+    @Benchmark
+    public int javaSoundFileFormat() {
+        int frames = 0;
+        for (Path p : files) {
+            try {
+                AudioFileFormat f = AudioSystem.getAudioFileFormat(p.toFile());
+                frames += f.getFrameLength();
+            } catch (IOException | UnsupportedAudioFileException ignored) {
+            }
+        }
+        return frames;
+    }
+}
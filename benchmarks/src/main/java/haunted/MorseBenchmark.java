@@ -0,0 +1,85 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Morse engine: encoding the ghost message and a 1 MB paragraph to timing arrays, mixing
+ * the ghost message (at 20 WPM) through a MorseVoice, and decoding 10 s of noisy CW.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MorseBenchmark {
+
+    private static final String GHOST = "THIS IS DEFINITELY AN A";
+
+    private MorseEncoder encoder;
+    private String paragraph;
+    private MorseEncoder.Runs ghostRuns;
+    private float[] mix;
+    private float[] noisyCw;    // 10 s of stereo mix: Morse at 20 WPM plus noise
+    private MorseDecoder decoder;
+
+    @Setup
+    public void setup() {
+        encoder = new MorseEncoder(20, 20, 48000);
+        StringBuilder sb = new StringBuilder(1 << 20);
+        while (sb.length() < (1 << 20)) sb.append("The quick brown fox jumps over the lazy dog, 1234567890? <AR> ");
+        paragraph = sb.substring(0, 1 << 20);
+        ghostRuns = encoder.encode(GHOST);
+        mix = new float[AudioMixer.BUFFER_FRAMES * AudioMixer.CHANNELS];
+
+        int buffers = 10 * 48000 / AudioMixer.BUFFER_FRAMES;
+        noisyCw = new float[buffers * mix.length];
+        MorseEncoder.Runs runs = encoder.encode("CQ CQ DE GHOST THIS IS DEFINITELY AN A");
+        MorseVoice v = new MorseVoice(runs, MorseCode.tone(runs.dotFrames), MorseCode.tone(runs.dashFrames), 1f);
+        Random rng = new Random(7);
+        for (int b = 0; b < buffers; b++) {
+            Arrays.fill(mix, 0f);
+            v.mix(mix, AudioMixer.BUFFER_FRAMES, 0.5f);
+            for (int i = 0; i < mix.length; i++) noisyCw[b * mix.length + i] = mix[i] + (float) rng.nextGaussian() * 0.05f;
+        }
+        decoder = new MorseDecoder(800, 20, null);
+    }
+
+    @Benchmark
+    public MorseEncoder.Runs encodeGhostMessage() {
+        return encoder.encode(GHOST);
+    }
+
+    /** Divide 1 MiB by the score for the encoding rate. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public MorseEncoder.Runs encodeParagraph1MiB() {
+        return encoder.encode(paragraph);
+    }
+
+    /** Divide 10 s by the score for the realtime factor on one core. */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public String decodeTenSeconds() {
+        decoder.reset();
+        for (int off = 0; off < noisyCw.length; off += mix.length) {
+            System.arraycopy(noisyCw, off, mix, 0, mix.length);
+            decoder.onMix(mix, AudioMixer.BUFFER_FRAMES, AudioMixer.CHANNELS);
+        }
+        return decoder.recentText();
+    }
+
+    @Benchmark
+    public float[] mixGhostMessage() {
+        MorseVoice v = new MorseVoice(ghostRuns, MorseCode.tone(ghostRuns.dotFrames),
+                MorseCode.tone(ghostRuns.dashFrames), 1f);
+        while (v.mix(mix, AudioMixer.BUFFER_FRAMES, 1f) == AudioMixer.BUFFER_FRAMES) {
+            // keep mixing until the message ends
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,57 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/** Offscreen frame rendering of the radio and the splash screen (runs headless). */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@State(Scope.Thread)
+public class RenderBenchmark {
+
+    private static final int W = 960, H = 720;
+
+    private RadioPanel radio;
+    private HauntedSplashScreen splash;
+    private BufferedImage frame;
+
+    @Setup
+    public void setup() {
+        radio = new RadioPanel();
+        radio.setSize(W, H);
+        radio.doLayout();
+
+        splash = new HauntedSplashScreen(null);
+        splash.setSize(HauntedSplashScreen.BASE_W * 3, HauntedSplashScreen.BASE_H * 3);
+
+        frame = new BufferedImage(W, H, BufferedImage.TYPE_INT_ARGB);
+    }
+
+    @Benchmark
+    public BufferedImage radioPanelFrame() {
+        Graphics2D g = frame.createGraphics();
+        try {
+            radio.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return frame;
+    }
+
+    @Benchmark
+    public BufferedImage splashScreenFrame() {
+        Graphics2D g = frame.createGraphics();
+        try {
+            splash.paint(g);
+        } finally {
+            g.dispose();
+        }
+        return frame;
+    }
+}
@@ -0,0 +1,79 @@
+package haunted;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tune-to-first-audio latency while sweeping the knob across 64 podcast channels: from
+ * playChannel to the first mixer buffer of the new channel, with and without the
+ * ChannelPrefetcher having seen the knob approach. SampleTime reports p50/p99 directly.
+ * Episodes are 44.1 kHz, so a cold tune opens, maps and sets up resampling on the way.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TuneBenchmark {
+
+    private static final int CHANNELS = 64;
+    private static final double KNOB_SPEED = 8; // channels per second
+
+    @Param({"true", "false"})
+    public boolean prefetch;
+
+    private Path root;
+    private ChannelManagerSwing manager;
+    private int channel = 1;
+    private int direction = 1;
+
+    @Setup
+    public void setup() throws Exception {
+        root = Files.createTempDirectory("hr_bench_tune_");
+        Path podcasts = Files.createDirectories(root.resolve("spanish_podcast"));
+        for (int i = 0; i < CHANNELS * 2; i++) {
+            BenchFixtures.writeWav(podcasts.resolve(String.format("episode_%03d.wav", i)), 2, 44100, 2);
+        }
+        Path conf = Files.write(root.resolve("channels.conf"), List.of("1-" + CHANNELS + " folder spanish_podcast"));
+        System.setProperty("haunted.channels", conf.toString());
+        System.setProperty("haunted.library.dir", "");
+        System.setProperty("haunted.transcodeCache.dir", "");
+        System.setProperty("haunted.prefetch.bytes", prefetch ? String.valueOf(4L << 20) : "0");
+        manager = new ChannelManagerSwing(root, new AudioPlayer(MemorySink.discarding(false)));
+        manager.getChannelTable().get(10, TimeUnit.SECONDS);
+    }
+
+    /** Move the knob towards the next channel and let the prefetcher catch up (not timed). */
+    @Setup(Level.Invocation)
+    public void turnKnob() {
+        if (channel + direction < 1 || channel + direction > CHANNELS) direction = -direction;
+        channel += direction;
+        manager.getPrefetcher().onTuning(channel - 0.6 * direction, KNOB_SPEED * direction);
+        manager.getPrefetcher().awaitIdle();
+    }
+
+    @TearDown(Level.Invocation)
+    public void silence() {
+        manager.stop();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        manager.stop();
+        manager.getPrefetcher().clear();
+        BenchFixtures.delete(root);
+    }
+
+    @Benchmark
+    public long tuneToFirstAudio() throws Exception {
+        CompletableFuture<Long> heard = new CompletableFuture<>();
+        manager.playChannel(channel, heard);
+        return heard.get(5, TimeUnit.SECONDS);
+    }
+}
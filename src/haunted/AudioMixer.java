@@ -0,0 +1,242 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AudioMixer
+ *  - Sums every active voice (podcast, static overlay, Morse, jumpscare…) into a float
+ *    buffer with per-voice gain, detunes it with the DetuneStage when the tuning knob sits
+ *    between stations, applies the master GainStage and clips to 16-bit.
+ *  - The steady state allocates nothing: mix buffer and voice slots are preallocated.
+ *  - Purely single-threaded: only the AudioScheduler thread calls into it, between
+ *    buffers, so voices never need locking.
+ */
+public final class AudioMixer {
+
+    /** Output format of the shared line: 48 kHz, 16-bit, stereo, signed little-endian. */
+    public static final AudioFormat FORMAT = new AudioFormat(48000f, 16, 2, true, false);
+    public static final int CHANNELS = 2;
+
+    /** Frames mixed per write (~21 ms at 48 kHz). */
+    static final int BUFFER_FRAMES = 1024;
+    private static final int MAX_VOICES = 16;
+    private static final int GAIN_RAMP_FRAMES = 960; // 20 ms at 48 kHz
+
+    /**
+     * One sound in the mix. Subclasses implement {@link #mix}; everything else
+     * (gain, stop, completion) is handled here.
+     */
+    public abstract static class Voice {
+        private volatile float gain;
+        private volatile boolean stopRequested;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private final Completion completion = new Completion();
+        long generation;   // set by the scheduler when the voice is submitted
+        boolean overlay;   // overlays ride along with the main program instead of replacing it
+
+        protected Voice(float gain) {
+            this.gain = gain;
+        }
+
+        /**
+         * Add up to {@code frames} interleaved stereo frames into {@code mix}, scaled by {@code gain}.
+         * Return the number of frames produced; fewer than requested means the voice has ended.
+         * Runs on the audio thread and must not allocate.
+         */
+        protected abstract int mix(float[] mix, int frames, float gain);
+
+        /** Move playback to {@code frame} (audio thread); false if this voice can't seek. */
+        protected boolean seek(long frame) {
+            return false;
+        }
+
+        /** Release resources once the voice leaves the mix (audio thread, exactly once). */
+        protected void release() {}
+
+        public void setGain(float g)  { gain = Math.max(0f, g); }
+        public float getGain()        { return gain; }
+
+        /** Ask the mixer to drop this voice at the next buffer boundary. */
+        public void stop()            { stopRequested = true; }
+        public boolean isFinished()   { return finished.getCount() == 0; }
+
+        /** Block until the voice has left the mix (or was dropped before it started). */
+        public void awaitFinished() throws InterruptedException {
+            finished.await();
+        }
+
+        /** Block up to {@code millis}; returns true if the voice finished in time. */
+        public boolean awaitFinished(long millis) throws InterruptedException {
+            return finished.await(millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * Completes when the voice plays to its end; cancelled if it is stopped, replaced by a
+         * newer program or dropped at shutdown. Cancelling it stops the voice.
+         */
+        public CompletableFuture<Void> completion() {
+            return completion;
+        }
+
+        /** Leave the mix as if cut off: release resources and wake anyone waiting. Idempotent. */
+        final void finish() {
+            finish(false);
+        }
+
+        /** Leave the mix; {@code ended} means the voice ran out on its own rather than being cut. */
+        final void finish(boolean ended) {
+            if (isFinished()) return;
+            try {
+                release();
+            } catch (Exception ignored) {
+                // A failing source must not take the audio thread down
+            }
+            finished.countDown();
+            if (ended) completion.complete(null);
+            else completion.cancel(false);
+        }
+
+        /** Future whose cancel() also takes the voice out of the mix. */
+        private final class Completion extends CompletableFuture<Void> {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                stop();
+                return super.cancel(mayInterruptIfRunning);
+            }
+        }
+    }
+
+    /**
+     * Listener on the finished mix (before master volume), e.g. a MorseDecoder.
+     * Called on the audio thread once per buffer; must not block or allocate.
+     */
+    public interface Tap {
+        void onMix(float[] mix, int frames, int channels);
+    }
+
+    private final Voice[] voices = new Voice[MAX_VOICES];
+    private final float[] mixBuf = new float[BUFFER_FRAMES * CHANNELS];
+    private final GainStage masterGain = new GainStage(GAIN_RAMP_FRAMES, 0.85f);
+    private final DetuneStage detune = new DetuneStage();
+    private Tap tap;
+
+    /** Bytes produced by one {@link #render} call. */
+    public static int bufferBytes() {
+        return BUFFER_FRAMES * CHANNELS * 2;
+    }
+
+    /** Add a voice; returns false (and finishes it) if all slots are busy. */
+    boolean add(Voice v) {
+        for (int i = 0; i < voices.length; i++) {
+            if (voices[i] == null) {
+                voices[i] = v;
+                return true;
+            }
+        }
+        v.finish();
+        return false;
+    }
+
+    /** Drop every voice submitted before generation {@code gen}. */
+    void stopOlderThan(long gen) {
+        for (int i = 0; i < voices.length; i++) {
+            if (voices[i] != null && voices[i].generation < gen) retire(i);
+        }
+    }
+
+    /** Seek the main (non-overlay) voice of generation {@code gen}. */
+    boolean seek(long gen, long frame) {
+        for (Voice v : voices) {
+            if (v != null && !v.overlay && v.generation == gen) return v.seek(frame);
+        }
+        return false;
+    }
+
+    /** Software master volume (0..1); pass 1 while a hardware control handles volume. */
+    void setMasterVolume(float v) {
+        masterGain.setVolume(v);
+    }
+
+    /** How far off-station the tuning knob is, 0 (on a station) to 1 (halfway to the next). */
+    void setDetune(float d) {
+        detune.setDetune(d);
+    }
+
+    /** Install (or with null, remove) the tap that sees every rendered buffer. */
+    void setTap(Tap t) {
+        tap = t;
+    }
+
+    /** True while any voice is in the mix. */
+    boolean isActive() {
+        for (Voice v : voices) {
+            if (v != null) return true;
+        }
+        return false;
+    }
+
+    /** Drop everything (end of session). */
+    void clear() {
+        for (int i = 0; i < voices.length; i++) retire(i);
+    }
+
+    /** Mix one buffer period of all voices into {@code out} as 16-bit little-endian PCM. */
+    void render(byte[] out) {
+        Arrays.fill(mixBuf, 0f);
+        for (int i = 0; i < voices.length; i++) {
+            Voice voice = voices[i];
+            if (voice == null) continue;
+            if (voice.stopRequested) {
+                retire(i);
+                continue;
+            }
+            int produced;
+            try {
+                produced = voice.mix(mixBuf, BUFFER_FRAMES, voice.gain);
+            } catch (RuntimeException e) {
+                produced = -1;
+            }
+            if (produced < BUFFER_FRAMES) retire(i, produced >= 0);
+        }
+
+        // Off-station: fade into static; the tap hears what the listener hears
+        detune.apply(mixBuf, BUFFER_FRAMES);
+
+        if (tap != null) {
+            try {
+                tap.onMix(mixBuf, BUFFER_FRAMES, CHANNELS);
+            } catch (RuntimeException ignored) {
+                // Analysis must never stop playback
+            }
+        }
+
+        // Master volume (unity while the hardware control handles it)
+        masterGain.apply(mixBuf, BUFFER_FRAMES, CHANNELS);
+
+        // Clip float mix to signed 16-bit little-endian
+        for (int i = 0, o = 0; i < mixBuf.length; i++, o += 2) {
+            float s = mixBuf[i];
+            int pcm = (int) (s * 32767f);
+            if (pcm > 32767) pcm = 32767;
+            else if (pcm < -32768) pcm = -32768;
+            out[o] = (byte) pcm;
+            out[o + 1] = (byte) (pcm >> 8);
+        }
+    }
+
+    // ---------- Internals ----------
+
+    private void retire(int slot) {
+        retire(slot, false);
+    }
+
+    private void retire(int slot, boolean ended) {
+        Voice v = voices[slot];
+        voices[slot] = null;
+        if (v != null) v.finish(ended);
+    }
+}
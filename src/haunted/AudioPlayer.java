@@ -1,97 +1,161 @@
 package haunted;
 
 import javax.sound.sampled.*;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * AudioPlayer
- *  - Streams WAV audio (or formats decodable to PCM) via SourceDataLine.
- *  - Provides a Stop call that fully halts playback and frees the line.
- *  - Supports simple volume via MASTER_GAIN when the device exposes it.
- *  - Can inject short static bursts between segments for a “glitchy” effect.
+ *  - Streams WAV audio (or formats decodable to PCM) as voices of a shared AudioMixer,
+ *    which keeps a single output line open for the whole session.
+ *  - All playback control goes through one AudioScheduler thread and its command queue,
+ *    so quick knob turns can never leave two programs overlapping or lose a stop.
+ *  - Provides a Stop call that halts everything playing within one mixer buffer.
+ *  - Supports volume via MASTER_GAIN when the device exposes it, or a software gain stage.
+ *  - Detunes the whole mix into static and a narrowing band-pass while the tuning knob sits
+ *    between stations, computed on the audio thread (DetuneStage).
+ *  - Can inject short static bursts between segments for a “glitchy” effect. All static is
+ *    synthesized (StaticNoise): no file is opened or decoded for it.
+ *  - Plain PCM WAVs are memory-mapped (WavFile) and mixed straight from the mapping.
+ *  - Other short clips are served from a decoded PcmCache after the first play.
+ *  - Library episodes that need conversion are played from their TranscodeCache copy once
+ *    it has been built, mapped like any plain WAV.
+ *  - Every file is resampled and channel-mapped in-process to the one device format
+ *    (48 kHz stereo), so no offline conversion is needed and the line never reopens.
+ *  - Counts every source it opens and closes, so a burst of retunes can be checked for
+ *    opening (and leaking) files it never needed.
+ *  - Output goes to a pluggable AudioSink: the device line by default, or memory/WAV file,
+ *    optionally rendered faster than realtime.
  *
  * Methods used elsewhere:
  *   setVolume(float)
+ *   setDetune(float)
  *   stopAudio()
- *   playWavWithOccasionalGlitch(Path wav, Path staticWav, double glitchChance)
+ *   playWavWithOccasionalGlitch(Path wav, double glitchChance)
  *   playWavForMillis(Path wavPath, int millis)
+ *   playWavForMillisAsync(Path wavPath, int millis)
+ *   playStaticForMillisAsync(int millis)
  */
 public class AudioPlayer {
+    private static final int FINISH_MARGIN_MILLIS = 2000; // slack over a program's length before giving up on it
+    private static final float STATIC_GAIN = 0.5f;  // synthesized static, relative to an episode
+    private static final float STATIC_CRACKLES = 12f; // crackle impulses per second
+
     private final Random rng = new Random();
 
-    // We keep references so STOP can interrupt and close the active line/thread.
-    private volatile SourceDataLine currentLine; // active audio line, if any
-    private volatile Thread playThread;          // background thread for segmented playback
-    private volatile float volume = 0.85f;       // logical volume [0..1]
+    // The one audio thread: owns the output sink and the mixer, fed by commands
+    private final AudioScheduler scheduler;
+
+    // Generation of the last program we started, so seek() can't hit a newer one
+    private volatile long currentGeneration;
+
+    // Decoded short clips, so repeated effects skip file I/O and decoding
+    private final PcmCache pcmCache = PcmCache.fromSystemProperties();
+
+    // Device-native copies of library episodes, built in the background after a scan
+    private final TranscodeCache transcodeCache = TranscodeCache.fromSystemProperties();
+
+    private final AtomicLong sourcesOpened = new AtomicLong();
+    private final AtomicLong sourcesClosed = new AtomicLong();
+
+    /** Player on the default audio device. */
+    public AudioPlayer() {
+        this(null);
+    }
+
+    /**
+     * Player rendering into {@code sink} (e.g. a non-realtime MemorySink or WavFileSink for
+     * tests and benchmarks); null means the default audio device.
+     */
+    public AudioPlayer(AudioSink sink) {
+        this.scheduler = new AudioScheduler(sink);
+    }
+
+    /** Decoded-clip cache; exposes hit/miss/eviction counters for sizing. */
+    public PcmCache getPcmCache() {
+        return pcmCache;
+    }
+
+    /** On-disk cache of device-native episode copies; ChannelManagerSwing feeds it the library. */
+    public TranscodeCache getTranscodeCache() {
+        return transcodeCache;
+    }
 
-    /** Set target volume (0.0 = mute, 1.0 = max). */
+    /** Shared scheduler, for callers that want to overlay their own voices (Morse, jumpscare…). */
+    public AudioScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /** Set target volume (0.0 = mute, 1.0 = max). Applies live, ramped. */
     public void setVolume(float v) {
-        volume = Math.max(0f, Math.min(1f, v));
-        // If we’re already playing, try to update the current line’s gain live.
-        SourceDataLine line = currentLine;
-        if (line != null && line.isOpen()) {
-            setGainIfSupported(line, volume);
-        }
+        scheduler.setVolume(v);
+    }
+
+    /** How far off-station the tuning knob is (0 = on a station, 1 = only static). Ramped. */
+    public void setDetune(float d) {
+        scheduler.setDetune(d);
     }
 
     /**
-     * Hard stop whatever is currently playing. This fully resets state and frees the audio device.
+     * Hard stop whatever is currently playing, within one buffer period. The output line
+     * stays open so the next play starts without device latency.
      * Always safe to call (no-op if nothing is playing).
      */
     public void stopAudio() {
-        // Interrupt the background playback loop if it exists
-        Thread t = playThread;
-        if (t != null) {
-            t.interrupt();
-        }
-        // Stop and close the active line if present
-        SourceDataLine line = currentLine;
-        if (line != null) {
-            try {
-                line.stop();
-                line.flush();
-                line.close();
-            } catch (Exception ignored) {
-                // We want to guarantee teardown even if some device throws
-            }
-        }
-        // Clear references
-        currentLine = null;
-        playThread = null;
+        scheduler.stop();
+    }
+
+    /**
+     * Jump the current program to {@code frame} of its episode. Ignored if something newer
+     * has started since (or the source can't seek).
+     */
+    public void seek(long frame) {
+        scheduler.seek(currentGeneration, frame);
     }
 
     /**
      * Plays content in 2–4 segments, randomly inserting short static bursts in between
-     * to simulate a glitchy broadcast.
+     * to simulate a glitchy broadcast. The episode is opened once: each segment picks up
+     * at the exact frame where the previous one stopped. Returns immediately; the
+     * sequencing runs on the audio thread; the future completes when the program ends and
+     * is cancelled if it is stopped or replaced.
      *
      * @param wav          main audio file to play in chunks
-     * @param staticWav    static noise file (short bursts)
      * @param glitchChance probability [0..1] to inject a burst between segments
      */
-    public void playWavWithOccasionalGlitch(Path wav, Path staticWav, double glitchChance) {
-        stopAudio(); // ensure only one active playback at a time
-
-        playThread = new Thread(() -> {
-            int segments = 2 + rng.nextInt(3); // 2–4 segments
-            for (int i = 0; i < segments && !Thread.currentThread().isInterrupted(); i++) {
-                // 4–9 seconds of the main clip (or until EOF)
-                playWavForMillis(wav, 4000 + rng.nextInt(5000));
-                if (Thread.currentThread().isInterrupted()) break;
-
-                // Random short static burst (300–700 ms)
-                if (rng.nextDouble() < glitchChance) {
-                    playWavForMillis(staticWav, 300 + rng.nextInt(400));
-                }
-            }
-        }, "audio-play");
-        playThread.start();
+    public CompletableFuture<Void> playWavWithOccasionalGlitch(Path wav, double glitchChance) {
+        return playWithOccasionalGlitch(open(wav), StaticNoise.Color.PINK, glitchChance);
+    }
+
+    /**
+     * {@link #playWavWithOccasionalGlitch} for an episode the caller has already opened (e.g.
+     * prefetched by ChannelPrefetcher); the voice owns it from now on. Null plays nothing.
+     * @param bursts color of the static between segments
+     */
+    CompletableFuture<Void> playWithOccasionalGlitch(PcmSource episode, StaticNoise.Color bursts, double glitchChance) {
+        if (episode == null) {
+            stopAudio(); // nothing playable: at least silence the previous program
+            return CompletableFuture.completedFuture(null);
+        }
+        StaticNoise noise = newStatic(bursts, Long.MAX_VALUE);
+        // A new PLAY replaces whatever was playing (ensures only one active program)
+        GlitchVoice voice = new GlitchVoice(new PcmCursor(episode), noise, glitchChance, rng);
+        currentGeneration = scheduler.play(voice);
+        return voice.completion();
     }
 
     /**
-     * Core streaming helper. If the file is missing or format is unsupported,
-     * we just “sleep” for the requested duration so callers’ timing stays consistent.
+     * Plays the file as the current program and blocks until it ends (or is replaced/stopped).
+     * If the file is missing or format is unsupported, we just “sleep” for the
+     * requested duration so callers’ timing stays consistent.
      *
      * @param wavPath path to a WAV file
      * @param millis  maximum duration to stream (may end earlier on EOF)
@@ -99,98 +163,201 @@ public class AudioPlayer {
     public void playWavForMillis(Path wavPath, int millis) {
         if (millis <= 0) return;
 
-        if (!Files.exists(wavPath)) {
-            // Missing file — preserve timing so UX doesn’t feel broken
-            sleep(millis);
-            System.out.println("[Audio] play " + wavPath + " for " + millis + "ms (exists=" + java.nio.file.Files.exists(wavPath) + ")");
+        // If a higher-level call is in progress, allow STOP to interrupt it
+        if (Thread.currentThread().isInterrupted()) return;
 
+        PcmCursor cursor = openCursor(wavPath);
+        if (cursor == null) {
+            // Missing or undecodable — preserve timing so UX doesn’t feel broken
+            sleep(millis);
             return;
         }
 
-        // If a higher-level call is in progress, allow STOP to interrupt it
-        if (Thread.currentThread().isInterrupted()) return;
+        PcmVoice voice = new PcmVoice(cursor, 1f, framesFor(millis), true);
+        currentGeneration = scheduler.play(voice);
+        try {
+            // Bounded: a dead audio thread must not hang the caller
+            if (!voice.awaitFinished(millis + FINISH_MARGIN_MILLIS)) voice.stop();
+        } catch (InterruptedException e) {
+            voice.stop();
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        try (AudioInputStream in = AudioSystem.getAudioInputStream(wavPath.toFile())) {
-            AudioFormat base = in.getFormat();
-
-            // Normalize to signed 16-bit PCM, little-endian, preserving channels & sample rate.
-            // Many WAVs are already PCM, but this guarantees a streamable target format.
-            AudioFormat decoded = new AudioFormat(
-                    AudioFormat.Encoding.PCM_SIGNED,
-                    base.getSampleRate(),
-                    16,
-                    base.getChannels(),
-                    base.getChannels() * 2,
-                    base.getSampleRate(),
-                    false // little-endian
-            );
-
-            try (AudioInputStream din = AudioSystem.getAudioInputStream(decoded, in)) {
-                DataLine.Info info = new DataLine.Info(SourceDataLine.class, decoded);
-                try (SourceDataLine line = (SourceDataLine) AudioSystem.getLine(info)) {
-
-                    // Store the line so stopAudio() can halt it
-                    currentLine = line;
-
-                    line.open(decoded);
-                    setGainIfSupported(line, volume); // apply current volume if supported
-                    line.start();
-
-                    byte[] buffer = new byte[4096];
-                    long end = System.currentTimeMillis() + millis;
-
-                    while (System.currentTimeMillis() < end && !Thread.currentThread().isInterrupted()) {
-                        int n = din.read(buffer, 0, buffer.length);
-                        if (n <= 0) break; // EOF
-                        line.write(buffer, 0, n);
-                    }
-
-                    // Finalize playback cleanly
-                    line.drain();
-                    line.stop();
-                } finally {
-                    currentLine = null; // line is closed by try-with-resources above
-                }
-            }
-        } catch (UnsupportedAudioFileException e) {
-            // Some WAVs/codecs might not be decodable on this JVM/audio stack
-            sleep(millis);
-        } catch (LineUnavailableException e) {
-            // Device busy or not available — fail softly
-            sleep(millis);
-        } catch (Exception e) {
-            // Any other I/O/runtime issue — keep UX timing consistent
-            sleep(millis);
+    /**
+     * Non-blocking form of {@link #playWavForMillis}: starts the file as the current program
+     * and returns a future that completes when it ends (cancelled if it is stopped or
+     * replaced). A missing file completes after {@code millis}, like the blocking version.
+     */
+    public CompletableFuture<Void> playWavForMillisAsync(Path wavPath, int millis) {
+        if (millis <= 0) return CompletableFuture.completedFuture(null);
+        return playForMillisAsync(open(wavPath), millis);
+    }
+
+    /** {@link #playWavForMillisAsync} for an already opened source, which the voice then owns. */
+    CompletableFuture<Void> playForMillisAsync(PcmSource source, int millis) {
+        if (source == null) {
+            return CompletableFuture.runAsync(() -> {}, CompletableFuture.delayedExecutor(millis, TimeUnit.MILLISECONDS));
+        }
+        if (millis <= 0) {
+            source.close();
+            return CompletableFuture.completedFuture(null);
         }
+        PcmVoice voice = new PcmVoice(source, 1f, framesFor(millis), true);
+        currentGeneration = scheduler.play(voice);
+        return voice.completion();
+    }
+
+    /**
+     * Synthesized radio static as the current program for {@code millis}: nothing to open or
+     * decode. The future completes when it ends (cancelled if it is stopped or replaced).
+     */
+    public CompletableFuture<Void> playStaticForMillisAsync(int millis) {
+        if (millis <= 0) return CompletableFuture.completedFuture(null);
+        StaticNoise voice = newStatic(StaticNoise.Color.PINK, framesFor(millis));
+        currentGeneration = scheduler.play(voice);
+        return voice.completion();
+    }
+
+    // ---------- Stats ----------
+    /** Files opened for playback (episodes, static, prefetched channels). */
+    public long sourcesOpened() { return sourcesOpened.get(); }
+    /** Sources closed again; opened minus closed is what is open right now. */
+    public long sourcesClosed() { return sourcesClosed.get(); }
+
+    /** Signed 16-bit little-endian PCM with the same channels & sample rate as {@code base}. */
+    static AudioFormat toPcm16(AudioFormat base) {
+        return new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                base.getSampleRate(),
+                16,
+                base.getChannels(),
+                base.getChannels() * 2,
+                base.getSampleRate(),
+                false // little-endian
+        );
+    }
+
+    /**
+     * Java Sound stream for {@code wav}. Files inside a jar (zip file system Paths from
+     * ResourceAudio) are read and inflated in place rather than copied out first.
+     */
+    static AudioInputStream audioStream(Path wav) throws IOException, UnsupportedAudioFileException {
+        if (wav.getFileSystem() == FileSystems.getDefault()) return AudioSystem.getAudioInputStream(wav.toFile());
+        return AudioSystem.getAudioInputStream(new BufferedInputStream(Files.newInputStream(wav)));
     }
 
     // ---------- Internals ----------
 
+    /** Mixer frames covering {@code millis} of audio. */
+    private static long framesFor(int millis) {
+        return (long) millis * (long) AudioMixer.FORMAT.getSampleRate() / 1000L;
+    }
+
+    /** Fresh static with its own seed, so no two bursts sound alike. */
+    private StaticNoise newStatic(StaticNoise.Color color, long maxFrames) {
+        return new StaticNoise(color, STATIC_CRACKLES, STATIC_GAIN, rng.nextLong(), maxFrames);
+    }
+
     /**
-     * Try to set MASTER_GAIN in decibels based on our 0..1 volume.
-     * If unsupported on this device/line, we silently skip.
+     * Open {@code wav} as mixer-format PCM at frame 0, or null (with a log line) if it can't be
+     * played. Package-private so ChannelPrefetcher can open channels ahead of a tune.
      */
-    private void setGainIfSupported(SourceDataLine line, float vol) {
+    PcmSource open(Path wav) {
+        if (!Files.exists(wav)) {
+            System.out.println("[Audio] missing " + wav);
+            return null;
+        }
+        PcmSource source = openSource(wav);
+        return (source != null) ? new CountedSource(source) : null;
+    }
+
+    /** Open {@code wav} as a cursor at frame 0, or null (with a log line) if it can't be played. */
+    private PcmCursor openCursor(Path wav) {
+        PcmSource source = open(wav);
+        return (source != null) ? new PcmCursor(source) : null;
+    }
+
+    /**
+     * Open {@code wav} as PCM in the mixer format: its transcoded copy when one is ready,
+     * otherwise the file itself through {@link #openConverted}. Returns null if it cannot be decoded.
+     */
+    private PcmSource openSource(Path wav) {
+        Path copy = transcodeCache.lookup(wav);
+        if (copy != null) {
+            WavFile ready = WavFile.open(copy);
+            if (ready != null) return ready.source(); // already device-native: no conversion at all
+        }
+        return openConverted(wav, pcmCache);
+    }
+
+    /**
+     * Open {@code wav} as PCM in the mixer format. Plain 16-bit PCM WAVs are memory-mapped and
+     * read in place; other formats come from the decoded cache when possible (if {@code cache}
+     * is given), otherwise they are streamed through Java Sound. A WAV stored uncompressed in a
+     * jar is mapped straight out of the jar the same way as one on disk. Whatever the file's own
+     * rate and channel count, a ResamplingSource converts it, so the one shared line plays
+     * everything. Returns null if it cannot be decoded.
+     */
+    static PcmSource openConverted(Path wav, PcmCache cache) {
+        WavFile mapped = WavFile.open(wav);
+        if (mapped != null) {
+            return ResamplingSource.toMixerFormat(mapped.source(), mapped.header().sampleRate);
+        }
+
+        PcmCache.Clip clip = (cache != null) ? cache.get(wav) : null;
+        if (clip != null) {
+            return ResamplingSource.toMixerFormat(PcmSource.of(clip), (int) clip.format().getSampleRate());
+        }
+
+        AudioInputStream in = null;
         try {
-            if (line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
-                FloatControl gain = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
-                float min = gain.getMinimum(); // usually around -80 dB
-                float max = gain.getMaximum(); // usually around +6 dB
-                // Naive linear mapping 0..1 -> [min..max]; simple but effective
-                float db = min + (max - min) * vol;
-                gain.setValue(db);
+            in = audioStream(wav);
+            // Decode to signed 16-bit PCM at the file's own rate; rate conversion is ours
+            AudioInputStream pcm = AudioSystem.getAudioInputStream(toPcm16(in.getFormat()), in);
+            return ResamplingSource.toMixerFormat(PcmSource.of(pcm), (int) pcm.getFormat().getSampleRate());
+        } catch (Exception e) {
+            if (in != null) {
+                try { in.close(); } catch (Exception ignored) {}
             }
-        } catch (Exception ignored) {
-            // Some mixers/drivers throw on access; we keep going without volume control.
+            return null;
+        }
+    }
+
+    /** Counts its close in the player's stats (once, however often it is closed). */
+    private final class CountedSource implements PcmSource {
+        private final PcmSource source;
+        private boolean closed;
+
+        CountedSource(PcmSource source) {
+            this.source = source;
+            sourcesOpened.incrementAndGet();
+        }
+
+        @Override public int channels() { return source.channels(); }
+
+        @Override public ByteBuffer next(int maxFrames) throws IOException { return source.next(maxFrames); }
+
+        @Override public long frameLength() { return source.frameLength(); }
+
+        @Override public boolean seek(long frame) { return source.seek(frame); }
+
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            sourcesClosed.incrementAndGet();
+            source.close();
         }
     }
 
-    /** Sleep helper that ignores InterruptedException (we check interruption in loops). */
+    /** Sleep helper without checked exceptions; keeps the interrupt flag for our loops to check. */
     private void sleep(int ms) {
         try {
             Thread.sleep(ms);
-        } catch (InterruptedException ignored) {
-            // If interrupted during a timed fallback, just return
+        } catch (InterruptedException e) {
+            // If interrupted during a timed fallback, just return (STOP is seen by the caller)
+            Thread.currentThread().interrupt();
         }
     }
 }
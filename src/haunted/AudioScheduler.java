@@ -0,0 +1,270 @@
+package haunted;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AudioScheduler
+ *  - The one long-lived audio thread ("audio-scheduler"). It owns the output line and the
+ *    AudioMixer; no other thread touches either, so there are no volatile line/thread races.
+ *  - Other threads only enqueue commands on the thread's lock-free queue: PLAY, STOP, SEEK,
+ *    SET_VOLUME, SET_DETUNE, SET_TAP.
+ *    The queue is drained at every buffer boundary, so any command lands within one buffer
+ *    period (~21 ms) — including STOP.
+ *  - Every PLAY and STOP takes a new generation number. A PLAY that has been superseded by a
+ *    later PLAY/STOP by the time it is drained is dropped without ever sounding; applying a PLAY
+ *    or STOP removes every main voice from older generations. Overlays (Morse, effects) keep the
+ *    generation they were submitted in, so the next STOP or PLAY clears them too.
+ *  - Output goes to one AudioSink opened for the whole session (by default the hardware line).
+ *    If the sink is not device-clocked, the thread keeps real-time pace with parks, or — for
+ *    non-realtime sinks — renders as fast as the CPU allows and sleeps only while idle.
+ *  - If the output fails, the thread finishes every voice and exits; commands still queued,
+ *    or the next one submitted, start a fresh thread on a silent wall-clock-paced sink, so
+ *    nothing queues up unheard forever.
+ *  - Master volume uses the sink's hardware control when present, otherwise the mixer's
+ *    ramped software GainStage.
+ */
+public final class AudioScheduler {
+
+    private enum Kind { PLAY, OVERLAY, STOP, SEEK, SET_VOLUME, SET_DETUNE, SET_TAP }
+
+    /** Immutable command; one small allocation per user action, never per buffer. */
+    private static final class Command {
+        final Kind kind;
+        final long generation;
+        final AudioMixer.Voice voice;
+        final long frame;
+        final float value;
+        final AudioMixer.Tap tap;
+
+        Command(Kind kind, long generation, AudioMixer.Voice voice, long frame, float value) {
+            this(kind, generation, voice, frame, value, null);
+        }
+
+        Command(Kind kind, long generation, AudioMixer.Voice voice, long frame, float value, AudioMixer.Tap tap) {
+            this.kind = kind;
+            this.generation = generation;
+            this.voice = voice;
+            this.frame = frame;
+            this.value = value;
+            this.tap = tap;
+        }
+    }
+
+    private final AtomicLong generation = new AtomicLong();
+
+    // Audio-thread state
+    private final AudioMixer mixer = new AudioMixer();
+    private final byte[] outBuf = new byte[AudioMixer.bufferBytes()];
+    private AudioSink sink;
+    private boolean hardwareGain;
+    private float volume = 0.85f;
+
+    // Guarded by this: the running audio thread and its own command queue. A new thread gets a
+    // new queue, so a dying thread can never drain commands meant for its successor.
+    private Thread thread;
+    private ConcurrentLinkedQueue<Command> commands;
+
+    /** Scheduler playing through the default audio device. */
+    public AudioScheduler() {
+        this(null);
+    }
+
+    /**
+     * @param sink output for the session; null means the hardware line (falling back to a
+     *             wall-clock-paced discarding sink if no device is available)
+     */
+    public AudioScheduler(AudioSink sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Replace whatever is playing with {@code voice}.
+     * @return the generation of this play, usable with {@link #seek}
+     */
+    public long play(AudioMixer.Voice voice) {
+        long gen = generation.incrementAndGet();
+        voice.generation = gen;
+        submit(new Command(Kind.PLAY, gen, voice, 0, 0f));
+        return gen;
+    }
+
+    /** Mix {@code voice} on top of the current program; the next PLAY or STOP removes it. */
+    public void playOverlay(AudioMixer.Voice voice) {
+        long gen = generation.get();
+        voice.generation = gen;
+        voice.overlay = true;
+        submit(new Command(Kind.OVERLAY, gen, voice, 0, 0f));
+    }
+
+    /** Silence everything submitted so far. Takes effect at the next buffer boundary. */
+    public void stop() {
+        submit(new Command(Kind.STOP, generation.incrementAndGet(), null, 0, 0f));
+    }
+
+    /** Move the program started by {@link #play} (generation {@code gen}) to {@code frame}. */
+    public void seek(long gen, long frame) {
+        submit(new Command(Kind.SEEK, gen, null, frame, 0f));
+    }
+
+    /** Master volume 0..1. */
+    public void setVolume(float v) {
+        submit(new Command(Kind.SET_VOLUME, 0, null, 0, Math.max(0f, Math.min(1f, v))));
+    }
+
+    /** Tuning knob offset from the station, 0 (dead on) to 1 (only static); see DetuneStage. */
+    public void setDetune(float d) {
+        submit(new Command(Kind.SET_DETUNE, 0, null, 0, Math.max(0f, Math.min(1f, d))));
+    }
+
+    /** Let {@code tap} see every mixed buffer from now on (null removes it). */
+    public void setTap(AudioMixer.Tap tap) {
+        submit(new Command(Kind.SET_TAP, 0, null, 0, 0f, tap));
+    }
+
+    /** Current generation; a voice from an older generation is stale. */
+    public long generation() {
+        return generation.get();
+    }
+
+    /** Stop the audio thread and close the shared line (end of session). */
+    public synchronized void close() {
+        Thread t = thread;
+        thread = null;
+        if (t != null) {
+            t.interrupt();
+            try { t.join(500); } catch (InterruptedException ignored) { Thread.currentThread().interrupt(); }
+        }
+    }
+
+    // ---------- Internals ----------
+
+    private synchronized void submit(Command c) {
+        ensureStarted();
+        commands.add(c);
+        LockSupport.unpark(thread); // wake an idle offline render loop
+    }
+
+    private void ensureStarted() {
+        if (thread == null) start(new ConcurrentLinkedQueue<>());
+    }
+
+    private void start(ConcurrentLinkedQueue<Command> queue) {
+        commands = queue;
+        thread = new Thread(() -> run(queue), "audio-scheduler");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run(ConcurrentLinkedQueue<Command> queue) {
+        openSink();
+        final boolean deviceClocked = sink.isDeviceClocked();
+        final boolean realtime = deviceClocked || sink.isRealtime();
+        final long periodNanos = (long) (AudioMixer.BUFFER_FRAMES * 1_000_000_000L / AudioMixer.FORMAT.getSampleRate());
+        long nextDeadline = System.nanoTime();
+        boolean failed = false;
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                drainCommands(queue);
+                if (!realtime && !mixer.isActive()) {
+                    // Offline rendering: nothing to play, so no audio time passes until a command arrives
+                    if (queue.isEmpty()) LockSupport.park(this);
+                    continue;
+                }
+                mixer.render(outBuf);
+                sink.write(outBuf, 0, outBuf.length); // a line blocks here at device pace
+                if (realtime && !deviceClocked) {
+                    // Virtual clock: keep real-time pace so playback durations still hold
+                    nextDeadline += periodNanos;
+                    long wait = nextDeadline - System.nanoTime();
+                    if (wait > 0) LockSupport.parkNanos(wait);
+                    else nextDeadline = System.nanoTime();
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("[Audio] output failed, audio thread stopping: " + e.getMessage());
+            failed = true;
+        } finally {
+            mixer.clear();
+            sink.close();
+            if (failed) sink = MemorySink.discarding(true); // a restarted thread mixes silently
+            synchronized (this) {
+                boolean handedOver = false;
+                if (thread == Thread.currentThread()) { // else close() has already cleared it
+                    thread = null;
+                    // Commands still queued behind the failure go to a successor, in order
+                    if (failed && !queue.isEmpty()) {
+                        start(queue);
+                        handedOver = true;
+                    }
+                }
+                if (!handedOver) {
+                    // Under the lock, so nothing more lands here: the next submit starts a new
+                    // thread with a new queue, and whatever this one still holds never sounds
+                    Command c;
+                    while ((c = queue.poll()) != null) {
+                        if (c.voice != null) c.voice.finish();
+                    }
+                }
+            }
+        }
+    }
+
+    /** Apply queued commands in submission order (audio thread). */
+    private void drainCommands(ConcurrentLinkedQueue<Command> queue) {
+        Command c;
+        while ((c = queue.poll()) != null) {
+            switch (c.kind) {
+                case PLAY:
+                    if (c.generation != generation.get()) {
+                        c.voice.finish(); // superseded before it got here: never sounds
+                    } else {
+                        mixer.stopOlderThan(c.generation);
+                        mixer.add(c.voice);
+                    }
+                    break;
+                case OVERLAY:
+                    if (c.generation < generation.get()) c.voice.finish();
+                    else mixer.add(c.voice);
+                    break;
+                case STOP:
+                    mixer.stopOlderThan(c.generation);
+                    break;
+                case SEEK:
+                    mixer.seek(c.generation, c.frame);
+                    break;
+                case SET_VOLUME:
+                    volume = c.value;
+                    applyVolume();
+                    break;
+                case SET_DETUNE:
+                    mixer.setDetune(c.value);
+                    break;
+                case SET_TAP:
+                    mixer.setTap(c.tap);
+                    break;
+            }
+        }
+    }
+
+    private void applyVolume() {
+        hardwareGain = sink.setHardwareVolume(volume);
+        mixer.setMasterVolume(hardwareGain ? 1f : volume);
+    }
+
+    /** Open the configured sink, or the hardware line with a silent fallback. */
+    private void openSink() {
+        AudioSink s = (sink != null) ? sink : new LineSink(outBuf.length * 4);
+        try {
+            s.open(AudioMixer.FORMAT);
+        } catch (Exception e) {
+            System.out.println("[Audio] no output line, mixing silently: " + e.getMessage());
+            s.close();
+            s = MemorySink.discarding(true);
+        }
+        sink = s;
+        applyVolume();
+    }
+}
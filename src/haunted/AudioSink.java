@@ -0,0 +1,42 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the mixer's output goes. The AudioScheduler renders one buffer at a time and
+ * hands it to a sink; the sink also decides how the audio clock runs:
+ *  - {@link #isDeviceClocked()}: write() itself blocks at playback pace (a real line);
+ *  - otherwise {@link #isRealtime()} asks the scheduler to pace writes by the wall clock,
+ *    or to render as fast as the CPU allows (tests, benchmarks, offline renders).
+ *
+ * Built-ins: {@link LineSink} (hardware), {@link MemorySink} (capture/discard), {@link WavFileSink}.
+ */
+public interface AudioSink extends Closeable {
+
+    /** Prepare for {@code format} buffers. Throws if the sink can't be used. */
+    void open(AudioFormat format) throws IOException;
+
+    /** Consume {@code len} bytes of PCM in the opened format. */
+    void write(byte[] buf, int off, int len) throws IOException;
+
+    /** True if write() blocks until the device has room, i.e. the device is the clock. */
+    default boolean isDeviceClocked() {
+        return false;
+    }
+
+    /** For sinks that are not device-clocked: pace by wall clock (true) or run flat out (false). */
+    boolean isRealtime();
+
+    /**
+     * Apply master volume in hardware if the sink can; return false to have the mixer's
+     * software gain stage do it instead.
+     */
+    default boolean setHardwareVolume(float volume0to1) {
+        return false;
+    }
+
+    @Override
+    void close();
+}
@@ -0,0 +1,109 @@
+package haunted;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToLongFunction;
+
+/**
+ * BroadcastSchedule
+ *  - A channel's virtual live broadcast: a fixed running order of its episodes that loops
+ *    forever on the shared wall clock, so a channel has always "reached" some point and
+ *    tuning back in joins it there instead of starting an episode from the top.
+ *  - The playlist is precomputed once with cumulative start offsets in mixer frames; finding
+ *    the episode and frame on air at any instant is one binary search, O(log n).
+ *  - Running order and phase are derived from the channel number and the episode names
+ *    only, so every session (and every machine with the same library) hears the same
+ *    station at the same time. Channels sharing episodes are phase-shifted apart.
+ *  - Episodes whose length cannot be read are left out of the running order.
+ *
+ * Immutable and thread-safe.
+ */
+public final class BroadcastSchedule {
+
+    private static final long RATE = (long) AudioMixer.FORMAT.getSampleRate();
+    private static final double GOLDEN = 0.6180339887498949; // spreads channel phases evenly
+
+    /** What is on air at one instant: an episode and the mixer frame reached within it. */
+    public static final class Cue {
+        public final Path episode;
+        public final long frame;
+        public final int index;    // position in the running order, -1 for a shuffled pick
+
+        Cue(Path episode, long frame, int index) {
+            this.episode = episode;
+            this.frame = frame;
+            this.index = index;
+        }
+
+        @Override
+        public String toString() {
+            return "Cue[" + episode.getFileName() + " @" + frame + "]";
+        }
+    }
+
+    private final Path[] playlist;
+    private final long[] starts;   // starts[i] = first frame of playlist[i]; starts[n] = cycle length
+    private final long phase;
+
+    private BroadcastSchedule(Path[] playlist, long[] starts, long phase) {
+        this.playlist = playlist;
+        this.starts = starts;
+        this.phase = phase;
+    }
+
+    /**
+     * Schedule for channel {@code channel} playing {@code episodes}, or null if none has a
+     * known length.
+     * @param mixerFrames length of an episode in mixer frames (48 kHz); 0 or less if unknown
+     */
+    public static BroadcastSchedule build(int channel, List<Path> episodes, ToLongFunction<Path> mixerFrames) {
+        List<Path> order = new ArrayList<>(episodes);
+        order.sort(Comparator.comparing(p -> p.getFileName().toString())); // listing order must not matter
+        Collections.shuffle(order, new Random(31L * channel + order.size()));
+
+        Path[] list = new Path[order.size()];
+        long[] starts = new long[order.size() + 1];
+        int n = 0;
+        long total = 0;
+        for (Path p : order) {
+            long len = mixerFrames.applyAsLong(p);
+            if (len <= 0) continue;
+            list[n] = p;
+            starts[n++] = total;
+            total += len;
+        }
+        if (n == 0) return null;
+        starts[n] = total;
+        long phase = (long) (total * ((channel * GOLDEN) % 1.0));
+        return new BroadcastSchedule(Arrays.copyOf(list, n), Arrays.copyOf(starts, n + 1), phase);
+    }
+
+    /** What is on air at wall-clock time {@code epochMillis}. */
+    public Cue at(long epochMillis) {
+        long total = starts[playlist.length];
+        long t = Math.floorMod(Math.multiplyExact(epochMillis, RATE) / 1000 + phase, total);
+        int i = Arrays.binarySearch(starts, 0, playlist.length, t);
+        if (i < 0) i = -i - 2; // insertion point - 1: the episode that started last
+        return new Cue(playlist[i], t - starts[i], i);
+    }
+
+    /** Episodes in the running order. */
+    public int size() {
+        return playlist.length;
+    }
+
+    /** Length of one full loop of the running order, in mixer frames. */
+    public long cycleFrames() {
+        return starts[playlist.length];
+    }
+
+    @Override
+    public String toString() {
+        return "BroadcastSchedule[" + playlist.length + " episodes, cycle=" + cycleFrames() / RATE + " s]";
+    }
+}
@@ -0,0 +1,366 @@
+package haunted;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ChannelLibrary
+ *  - The episode library behind channels 1–4: every .wav in one disk folder, with its format,
+ *    frame count, duration and data chunk offsets.
+ *  - Persisted in a compact binary index file, so startup is one file read instead of a
+ *    directory walk plus a header parse per episode.
+ *  - {@link #watch} keeps it current while the radio runs: a background thread first
+ *    reconciles the index with the folder (re-reading headers only of new or changed files),
+ *    then follows a WatchService to add, remove and refresh episodes as files come and go.
+ *    A burst of events (copying in a whole season) becomes one save and one notification.
+ *
+ * Index files live in the folder from the system property haunted.library.dir
+ * (default ~/.haunted-radio/library, "" keeps the index in memory only).
+ */
+public final class ChannelLibrary implements Closeable {
+
+    private static final int MAGIC = 0x48524C49; // "HRLI"
+    private static final int VERSION = 1;
+    private static final long SETTLE_MS = 200;   // quiet time that ends an event burst
+
+    /** One episode; {@link #header} is null if the file is not a WAV we can parse. */
+    public static final class Episode {
+        final Path path;
+        final long size;
+        final long mtime;
+        final WavFile.Header header;
+
+        Episode(Path path, long size, long mtime, WavFile.Header header) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.header = header;
+        }
+
+        public Path path()      { return path; }
+        public int sampleRate() { return (header != null) ? header.sampleRate : 0; }
+        public int channels()   { return (header != null) ? header.channels : 0; }
+        /** Frames in the data chunk, or -1 if unknown (not parsed, or a compressed codec). */
+        public long frames()    { return (header != null && header.knownFrames()) ? header.frames() : -1; }
+        /** Length in seconds, or -1 if unknown. */
+        public double seconds() { long f = frames(); return (f >= 0) ? (double) f / header.sampleRate : -1; }
+
+        boolean matches(BasicFileAttributes attrs) {
+            return attrs.size() == size && attrs.lastModifiedTime().toMillis() == mtime;
+        }
+    }
+
+    /** Told about every change to the episode list, on the watcher thread. */
+    public interface Listener {
+        void onLibraryChanged(List<Episode> episodes);
+    }
+
+    private final Path folder;
+    private final Path indexFile;                                   // null: memory only
+    private final Map<String, Episode> episodes = new TreeMap<>();  // by file name; guarded by this
+
+    private final LibraryScanner scanner = LibraryScanner.shared();
+    private volatile WatchService watcher;
+
+    private final AtomicLong loaded = new AtomicLong();
+    private final AtomicLong headersRead = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+
+    /**
+     * @param folder    the episode folder (need not exist yet)
+     * @param indexFile where the index is persisted; null keeps it in memory only
+     */
+    public ChannelLibrary(Path folder, Path indexFile) {
+        this.folder = folder.toAbsolutePath().normalize();
+        this.indexFile = indexFile;
+    }
+
+    /** Library for {@code folder} with its index under haunted.library.dir. */
+    public static ChannelLibrary forFolder(Path folder) {
+        String d = System.getProperty("haunted.library.dir",
+                Paths.get(System.getProperty("user.home", "."), ".haunted-radio", "library").toString());
+        Path abs = folder.toAbsolutePath().normalize();
+        Path name = abs.getFileName();
+        Path index = d.isEmpty() ? null : Paths.get(d).resolve((name == null ? "root" : name.toString())
+                + "-" + Integer.toHexString(abs.toString().hashCode()) + ".idx");
+        return new ChannelLibrary(abs, index);
+    }
+
+    public Path folder() {
+        return folder;
+    }
+
+    /** Current episodes, sorted by file name. */
+    public synchronized List<Episode> episodes() {
+        return new ArrayList<>(episodes.values());
+    }
+
+    /**
+     * Read the persisted index (one file read, no header parsing). Returns false if there is
+     * none, or it belongs to another folder or format version; the library is then empty
+     * until {@link #rescan}.
+     */
+    public boolean load() {
+        if (indexFile == null) return false;
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(indexFile);
+        } catch (IOException e) {
+            return false;
+        }
+        Map<String, Episode> read = new TreeMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) return false;
+            if (!folder.toString().equals(in.readUTF())) return false;
+            for (int i = 0, n = in.readInt(); i < n; i++) {
+                String name = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                WavFile.Header h = null;
+                if (in.readBoolean()) {
+                    h = new WavFile.Header(in.readUnsignedShort(), in.readUnsignedShort(), in.readInt(),
+                            in.readUnsignedShort(), in.readUnsignedShort(), in.readLong(), in.readLong());
+                }
+                read.put(name, new Episode(folder.resolve(name), size, mtime, h));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.out.println("[Library] ignoring unreadable index " + indexFile + ": " + e);
+            return false;
+        }
+        synchronized (this) {
+            episodes.clear();
+            episodes.putAll(read);
+        }
+        loaded.set(read.size());
+        return true;
+    }
+
+    /**
+     * Bring the index in line with the folder: drop missing files and re-read the header of
+     * each new or changed one (same size and mtime means unchanged), in parallel through a
+     * {@link LibraryScanner}. Returns true if anything
+     * changed. Does not save; see {@link #save}.
+     */
+    public boolean rescan() {
+        Set<String> seen = ConcurrentHashMap.newKeySet();
+        AtomicBoolean changed = new AtomicBoolean();
+        LibraryScanner.Stats stats = scanner.scan(folder, 1, new LibraryScanner.Sink() {
+            @Override
+            public boolean wants(Path file, BasicFileAttributes attrs) {
+                String name = file.getFileName().toString();
+                seen.add(name);
+                synchronized (ChannelLibrary.this) {
+                    Episode known = episodes.get(name);
+                    return known == null || !known.matches(attrs);
+                }
+            }
+
+            @Override
+            public void accept(Path file, BasicFileAttributes attrs, WavFile.Header header) {
+                headersRead.incrementAndGet();
+                Episode e = new Episode(file, attrs.size(), attrs.lastModifiedTime().toMillis(), header);
+                synchronized (ChannelLibrary.this) {
+                    episodes.put(file.getFileName().toString(), e);
+                }
+                changed.set(true);
+            }
+        });
+        if (stats.failedDirectories > 0) return changed.get(); // keep what we have rather than emptying the library
+        synchronized (this) {
+            if (episodes.keySet().retainAll(seen)) changed.set(true);
+        }
+        return changed.get();
+    }
+
+    /** Persist the index atomically (temp file + rename). No-op for a memory-only library. */
+    public void save() {
+        if (indexFile == null) return;
+        List<Episode> snapshot = episodes();
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeUTF(folder.toString());
+                out.writeInt(snapshot.size());
+                for (Episode e : snapshot) {
+                    out.writeUTF(e.path.getFileName().toString());
+                    out.writeLong(e.size);
+                    out.writeLong(e.mtime);
+                    WavFile.Header h = e.header;
+                    out.writeBoolean(h != null);
+                    if (h != null) {
+                        out.writeShort(h.formatTag);
+                        out.writeShort(h.channels);
+                        out.writeInt(h.sampleRate);
+                        out.writeShort(h.bitsPerSample);
+                        out.writeShort(h.blockAlign);
+                        out.writeLong(h.dataOffset);
+                        out.writeLong(h.dataLength);
+                    }
+                }
+            }
+            try {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.out.println("[Library] cannot save " + indexFile + ": " + e);
+        }
+    }
+
+    /**
+     * Start following the folder on a daemon thread: reconcile once, then apply file events
+     * as they arrive. {@code listener} hears about every change. Call at most once; does
+     * nothing if the folder does not exist.
+     */
+    public void watch(Listener listener) {
+        if (watcher != null || !Files.isDirectory(folder)) return;
+        WatchService ws;
+        try {
+            ws = folder.getFileSystem().newWatchService();
+            // Register before the reconcile scan, so nothing changed in between is missed
+            folder.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.out.println("[Library] cannot watch " + folder + ": " + e);
+            return;
+        }
+        watcher = ws;
+        Thread t = new Thread(() -> follow(ws, listener), "library-watch");
+        t.setDaemon(true);
+        t.setPriority(Thread.MIN_PRIORITY);
+        t.start();
+    }
+
+    /** Stop watching. */
+    @Override
+    public void close() {
+        WatchService ws = watcher;
+        if (ws != null) {
+            try {
+                ws.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    // ---------- Stats ----------
+
+    /** Episodes read from the persisted index by the last {@link #load}. */
+    public long loaded()      { return loaded.get(); }
+    /** WAV headers parsed (new or changed files). */
+    public long headersRead() { return headersRead.get(); }
+    /** Change batches applied by the watcher. */
+    public long updates()     { return updates.get(); }
+    public synchronized int size() { return episodes.size(); }
+
+    @Override
+    public String toString() {
+        return "ChannelLibrary[" + folder + ", episodes=" + size() + ", loaded=" + loaded()
+                + ", headersRead=" + headersRead() + ", updates=" + updates() + "]";
+    }
+
+    // ---------- Internals ----------
+
+    private void follow(WatchService ws, Listener listener) {
+        try {
+            if (rescan()) publish(listener);
+            while (true) {
+                WatchKey key = ws.take();
+                boolean changed = false;
+                do {
+                    for (WatchEvent<?> ev : key.pollEvents()) {
+                        if (ev.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            changed |= rescan();
+                        } else {
+                            Path p = folder.resolve((Path) ev.context());
+                            if (isWav(p)) changed |= refresh(p);
+                        }
+                    }
+                    if (!key.reset()) { // folder itself is gone
+                        synchronized (this) {
+                            changed |= !episodes.isEmpty();
+                            episodes.clear();
+                        }
+                        if (changed) publish(listener);
+                        return;
+                    }
+                } while ((key = ws.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null);
+                if (changed) publish(listener);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // closed: stop following
+        }
+    }
+
+    private void publish(Listener listener) {
+        updates.incrementAndGet();
+        save();
+        if (listener != null) listener.onLibraryChanged(episodes());
+    }
+
+    /** Add, update or drop one file. True if the library changed. */
+    private boolean refresh(Path p) {
+        String name = p.getFileName().toString();
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+            synchronized (this) {
+                return episodes.remove(name) != null;
+            }
+        }
+        if (!attrs.isRegularFile()) return false;
+        synchronized (this) {
+            Episode known = episodes.get(name);
+            if (known != null && known.matches(attrs)) return false;
+        }
+        Episode e = new Episode(p, attrs.size(), attrs.lastModifiedTime().toMillis(), readHeader(p));
+        synchronized (this) {
+            episodes.put(name, e);
+        }
+        return true;
+    }
+
+    private WavFile.Header readHeader(Path p) {
+        headersRead.incrementAndGet();
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            return WavFile.readHeader(ch);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean isWav(Path p) {
+        return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+}
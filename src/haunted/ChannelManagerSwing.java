@@ -1,135 +1,368 @@
 package haunted;
 
-import java.io.InputStream;
-import java.net.URL;
+import javax.sound.sampled.AudioInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.util.*;
-import java.util.stream.Stream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongFunction;
+import java.util.function.Supplier;
 
 /**
  * ChannelManagerSwing
- * - Channels 1–4: random podcast with static glitches
- * - Channel 5: short static (riddle handled in UI)
- * - Channel 666: ghost broadcast + hidden Morse
+ * - Channels come from a ChannelTable: audio/channels.conf if present (or the file named by
+ *   the system property haunted.channels), else the built-in layout:
+ *     Channels 1–4: podcast episodes with static glitches, each channel its own shuffle
+ *     Channel 5: short static (riddle handled in UI), synthesized like every static burst
+ *     Channel 666: ghost broadcast + hidden Morse
  *
  * Looks for audio under:
  *   disk:     audio/...
- *   classpath: /audio/...
- * Folder name fixed to "spanish_podcast" (singular) to match your resources.
+ *   classpath: /audio/...  (folders or jars, through ResourceAudio; disk wins)
+ * Default podcast folder is "spanish_podcast" (singular) to match your resources.
+ *
+ * Episode channels broadcast live on a shared virtual clock (BroadcastSchedule): tuning in
+ * joins the episode on air at the frame it has reached, by seeking, never decoding the skipped
+ * part. -Dhaunted.live=false picks shuffled episodes from the top instead.
+ *
+ * Knob turns go through a TunePipeline ({@link #tune}): a burst of detents plays synthesized
+ * static and only the channel the knob settles on is opened.
+ * Channels the tuning knob is heading for are opened ahead of time by a ChannelPrefetcher, so
+ * tuning in is a buffer swap; it also measures tune-to-first-audio latency.
+ *
+ * Every public operation is asynchronous: file lookups and audio work run on a dedicated
+ * "channel-audio" thread and callers get a CompletableFuture back, so Swing event handlers
+ * never block.
  */
 public class ChannelManagerSwing {
 
+    private static final int MAX_PER_CHANNEL = 4096; // episodes kept per "folders" subfolder channel
+    private static final long MIXER_RATE = (long) AudioMixer.FORMAT.getSampleRate();
+
     private final Path diskAudioRoot;
-    private final AudioPlayer player = new AudioPlayer();
+    private final ResourceAudio assets;
+    private final Map<String, ChannelLibrary> libraries = new ConcurrentHashMap<>(); // disk folder -> episodes
+    private final AudioPlayer player;
     private final Random rng = new Random();
-    private final Map<Integer, List<Path>> channelPods = new HashMap<>();
+    private final CompletableFuture<ChannelTable> table = new CompletableFuture<>();
+    private final Map<Path, Long> episodeFrames = new ConcurrentHashMap<>(); // length in mixer frames, 0 unknown
+    private final ChannelPrefetcher prefetcher;
+    private final TunePipeline tuner;
+
+    // All file and audio work runs here, never on the EDT; one thread keeps requests in order
+    private final ExecutorService audioExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "channel-audio");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Every request takes a ticket; a queued request that has been overtaken is skipped
+    private final AtomicLong requests = new AtomicLong();
+    // Held to check a ticket and start its program as one step, and by stop(), so a Stop
+    // issued while a request was still opening its file always lands after that request's PLAY
+    private final Object playLock = new Object();
 
     public ChannelManagerSwing(Path diskAudioRoot) {
+        this(diskAudioRoot, new AudioPlayer());
+    }
+
+    /** Manager playing through {@code player} (e.g. one on a MemorySink, for benchmarks). */
+    ChannelManagerSwing(Path diskAudioRoot, AudioPlayer player) {
         this.diskAudioRoot = diskAudioRoot;
-        loadPodcasts();
+        this.player = player;
+        this.prefetcher = ChannelPrefetcher.fromSystemProperties(player, table);
+        this.tuner = TunePipeline.fromSystemProperties(this::playChannel, this::playOffStation);
+        this.assets = new ResourceAudio(diskAudioRoot); // indexed on first use, on the audio thread
+        audioExecutor.execute(this::loadChannels);
     }
 
     public AudioPlayer getPlayer() {
         return player;
     }
 
+    /**
+     * Disk episode library (format, length, offsets per file) of a "folder" channel, e.g.
+     * "spanish_podcast"; null without a disk folder or before the channels have loaded.
+     */
+    public ChannelLibrary getLibrary(String folder) {
+        return libraries.get(folder);
+    }
+
+    /** Debounces knob turns; settle window and coalescing counters. */
+    public TunePipeline getTuner() {
+        return tuner;
+    }
+
+    /** Opens the channels the knob is heading for; RadioPanel feeds it knob motion. */
+    public ChannelPrefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /** The channel table, once its episodes are loaded; the tuning knob takes its dial range. */
+    public CompletableFuture<ChannelTable> getChannelTable() {
+        return table;
+    }
+
+    /** Audio assets from the disk folder, the classpath and jars. */
+    public ResourceAudio getAssets() {
+        return assets;
+    }
+
     public boolean trySolveRiddle(String answer) {
         String a = (answer == null) ? "" : answer.trim().toLowerCase(Locale.ROOT);
         return a.contains("shadow") || a.contains("sombra");
     }
 
-    public void playChannel(int ch) {
-        if (ch >= 1 && ch <= 4) {
-            List<Path> list = channelPods.getOrDefault(ch, List.of());
-            if (list.isEmpty()) { playStatic(1200); return; }
-            Path episode = list.get(rng.nextInt(list.size()));
-            Path staticPath = resolveToPathOrTemp("audio/static.wav", "audio/static.wav");
-            if (staticPath == null) {
-                player.playWavForMillis(episode, 5000);
-            } else {
-                player.playWavWithOccasionalGlitch(episode, staticPath, 0.12);
-            }
-        } else if (ch == 5) {
-            playStatic(600);
+    /**
+     * Tune to channel {@code ch}. Returns at once; the future completes when the program
+     * ends and is cancelled if a later request replaces it.
+     */
+    public CompletableFuture<Void> playChannel(int ch) {
+        return playChannel(ch, null);
+    }
+
+    /**
+     * {@link #playChannel(int)}, also completing {@code heard} with the tune-to-first-audio
+     * latency in nanoseconds once the channel's first buffer is mixed (episode channels only).
+     */
+    CompletableFuture<Void> playChannel(int ch, CompletableFuture<Long> heard) {
+        final long requested = System.nanoTime();
+        return submit(ticket -> playChannelNow(ch, ticket, requested, heard));
+    }
+
+    /**
+     * The knob passed detent {@code ch}: static while it keeps moving, then the channel it
+     * settles on (see TunePipeline). Returns at once.
+     */
+    public void tune(int ch) {
+        tuner.tune(ch);
+    }
+
+    /**
+     * Ghost broadcast with the hidden Morse message mixed on top. Returns at once; the
+     * returned future tracks the Morse message and is cancelled by the next retune or stop.
+     */
+    public CompletableFuture<Void> playGhost() {
+        return submit(this::playGhostNow);
+    }
+
+    /** Short static burst. Returns at once; the future completes when the burst ends. */
+    public CompletableFuture<Void> playStatic(int ms) {
+        return submit(ticket -> playStaticNow(ticket, ms));
+    }
+
+    /**
+     * Silence everything now, including requests still queued behind file I/O, so a quick
+     * Stop after a retune can never be overtaken by the retune.
+     */
+    public void stop() {
+        tuner.cancel();
+        synchronized (playLock) {
+            requests.incrementAndGet();
+            player.stopAudio();
         }
-    }// add the off switch
+    }
 
-    public void playGhost() {
-        Path ghost = resolveToPathOrTemp("audio/ghost_broadcast.wav", "audio/ghost_broadcast.wav");
-        Path staticPath = resolveToPathOrTemp("audio/static.wav", "audio/static.wav");
-        if (ghost != null && staticPath != null) {
-            player.playWavWithOccasionalGlitch(ghost, staticPath, 0.18);
-        } else {
-            playStatic(1200);
+    // -------------------- internals --------------------
+
+    /**
+     * Run {@code work} on the audio executor unless a newer request arrives first. It gets
+     * the request's ticket and starts its program through {@link #startIfCurrent}.
+     * The result is the playback future {@code work} returns.
+     */
+    private CompletableFuture<Void> submit(LongFunction<CompletableFuture<Void>> work) {
+        final long ticket = requests.incrementAndGet();
+        CompletableFuture<CompletableFuture<Void>> started = new CompletableFuture<>();
+        audioExecutor.execute(() -> {
+            if (ticket != requests.get()) {
+                started.cancel(false); // overtaken while queued: never starts
+                return;
+            }
+            try {
+                started.complete(work.apply(ticket));
+            } catch (RuntimeException e) {
+                started.completeExceptionally(e);
+            }
+        });
+        return started.thenCompose(f -> f);
+    }
+
+    /**
+     * Inter-station static from the TunePipeline: a request of its own, so a channel still
+     * opening its file when the knob moves on never starts on top of it.
+     */
+    private void playOffStation(AudioMixer.Voice hiss) {
+        synchronized (playLock) {
+            requests.incrementAndGet();
+            player.getScheduler().play(hiss);
         }
-        MorseCode.playMessage("THIS IS DEFINITELY AN A");
     }
 
-    public void playStatic(int ms) {
-        Path staticPath = resolveToPathOrTemp("audio/static.wav", "audio/static.wav");
-        if (staticPath != null) player.playWavForMillis(staticPath, ms);
+    /**
+     * Start a program with {@code start} if request {@code ticket} is still the latest; else
+     * close {@code opened} (may be null) and return a cancelled future. Opening files happens
+     * before this, outside the lock; {@code start} only enqueues scheduler commands.
+     */
+    private CompletableFuture<Void> startIfCurrent(long ticket, PcmSource opened, Supplier<CompletableFuture<Void>> start) {
+        synchronized (playLock) {
+            if (ticket == requests.get()) return start.get();
+        }
+        if (opened != null) opened.close(); // a Stop or newer request came in while it was opening
+        CompletableFuture<Void> overtaken = new CompletableFuture<>();
+        overtaken.cancel(false);
+        return overtaken;
     }
 
-    // -------------------- internals --------------------
+    private CompletableFuture<Void> playChannelNow(int ch, long ticket, long requested, CompletableFuture<Long> heard) {
+        ChannelTable.Channel channel = table.isDone() ? table.join().get(ch) : null;
+        if (channel == null) return CompletableFuture.completedFuture(null);
+        switch (channel.kind) {
+            case STATIC:
+                return playStaticNow(ticket, channel.millis);
+            case GHOST:
+                return playGhostNow(ticket);
+            default:
+                // On air right now (live), or the shuffle bag's next pick from the top
+                BroadcastSchedule.Cue cue = channel.cue(System.currentTimeMillis());
+                if (cue == null) return playStaticNow(ticket, 1200);
+                PcmSource ready = prefetcher.take(ch, cue.episode, cue.frame); // opened while the knob was on its way
+                PcmSource opened = (ready != null) ? ready : player.open(cue.episode);
+                if (opened != null && cue.frame > 0) opened.seek(cue.frame); // join mid-episode: nothing skipped is read
+                PcmSource source = (opened != null) ? prefetcher.timed(opened, ready != null, requested, heard) : null;
+                return startIfCurrent(ticket, source,
+                        () -> player.playWithOccasionalGlitch(source, StaticNoise.Color.PINK, 0.12));
+        }
+    }
 
-    /** Build episode lists for channels 1–4 from audio/spanish_podcast */
-    private void loadPodcasts() {
-        // 🔧 Folder fixed here (singular):
-        List<Path> episodes = listWavsInFolder("audio/spanish_podcast", "audio/spanish_podcast");
-        for (int ch = 1; ch <= 4; ch++) channelPods.put(ch, episodes);
-    }
-
-    /** Prefer disk; if missing, copy classpath resource to a temp file and return that Path. */
-    private Path resolveToPathOrTemp(String diskRelative, String classpathResource) {
-        try {
-            Path p = (diskAudioRoot != null && diskRelative.startsWith("audio/"))
-                    ? diskAudioRoot.resolve(diskRelative.substring("audio/".length()))
-                    : Paths.get(diskRelative);
-            if (Files.exists(p)) return p;
-        } catch (Exception ignored) {}
-
-        try {
-            URL url = getClass().getClassLoader().getResource(classpathResource);
-            if (url == null) return null;
-            try (InputStream in = url.openStream()) {
-                Path tmp = Files.createTempFile("hr_", "_" + Paths.get(classpathResource).getFileName());
-                tmp.toFile().deleteOnExit();
-                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
-                return tmp;
+    private CompletableFuture<Void> playGhostNow(long ticket) {
+        Path ghost = assets.find("audio/ghost_broadcast.wav");
+        PcmSource source = (ghost != null) ? player.open(ghost) : null;
+        return startIfCurrent(ticket, source, () -> {
+            if (source != null) {
+                // Low brown-noise rumble between the ghost's segments instead of the podcasts' hiss
+                player.playWithOccasionalGlitch(source, StaticNoise.Color.BROWN, 0.18);
+            } else {
+                player.playStaticForMillisAsync(1200);
             }
-        } catch (Exception ignored) {}
-        return null;
-    }
-
-    /** List .wav files from disk folder or classpath folder (when resources are copied to out/...). */
-    private List<Path> listWavsInFolder(String diskFolder, String classpathFolder) {
-        List<Path> out = new ArrayList<>();
-
-        // disk first
-        try {
-            Path dir = (diskAudioRoot != null && diskFolder.startsWith("audio/"))
-                    ? diskAudioRoot.resolve(diskFolder.substring("audio/".length()))
-                    : Paths.get(diskFolder);
-            if (Files.isDirectory(dir)) {
-                try (Stream<Path> s = Files.list(dir)) {
-                    s.filter(p -> p.toString().toLowerCase(Locale.ROOT).endsWith(".wav")).forEach(out::add);
-                }
-                return out;
+            return MorseCode.playMessageAsync("THIS IS DEFINITELY AN A", player.getScheduler());
+        });
+    }
+
+    private CompletableFuture<Void> playStaticNow(long ticket, int ms) {
+        return startIfCurrent(ticket, null, () -> player.playStaticForMillisAsync(ms));
+    }
+
+    /**
+     * Load the channel table and fill its episode channels. A "folder" channel reads last
+     * session's library index if there is one (one file read), otherwise scans; the library
+     * then follows the folder and refills its channels whenever episodes come or go. A
+     * "folders" range scans the disk folder's subfolders once, one channel each.
+     */
+    private void loadChannels() {
+        ChannelTable t = ChannelTable.load(channelConfig(), rng);
+        if (Boolean.parseBoolean(System.getProperty("haunted.live", "true"))) t.goLive(this::mixerFrames);
+        Map<String, List<ChannelTable.Spec>> byFolder = new LinkedHashMap<>();
+        for (ChannelTable.Spec s : t.specs()) {
+            if (s.type.equals("folder")) byFolder.computeIfAbsent(s.arg, k -> new ArrayList<>()).add(s);
+            else if (s.type.equals("folders")) loadSubfolders(t, s);
+        }
+        for (Map.Entry<String, List<ChannelTable.Spec>> e : byFolder.entrySet()) {
+            String folder = e.getKey();
+            List<ChannelTable.Spec> specs = e.getValue();
+            ChannelLibrary library = (diskAudioRoot != null) ? ChannelLibrary.forFolder(diskAudioRoot.resolve(folder)) : null;
+            if (library == null) {
+                publishEpisodes(t, folder, specs, List.of());
+                continue;
             }
-        } catch (Exception ignored) {}
-
-        // classpath (file protocol) — works when resources are copied to out/
-        try {
-            URL url = getClass().getClassLoader().getResource(classpathFolder);
-            if (url != null && "file".equalsIgnoreCase(url.getProtocol())) {
-                Path cpDir = Paths.get(url.toURI());
-                if (Files.isDirectory(cpDir)) {
-                    try (Stream<Path> s = Files.list(cpDir)) {
-                        s.filter(p -> p.toString().toLowerCase(Locale.ROOT).endsWith(".wav")).forEach(out::add);
-                    }
-                }
+            libraries.put(folder, library);
+            if (!library.load() && library.rescan()) library.save();
+            publishEpisodes(t, folder, specs, library.episodes());
+            library.watch(episodes -> audioExecutor.execute(() -> {
+                publishEpisodes(t, folder, specs, episodes);
+                t.assignTags();
+            }));
+        }
+        t.assignTags();
+        System.out.println("[Channels] " + t.size() + " channels, dial " + t.dialFirst() + "-" + t.dialLast());
+        table.complete(t);
+    }
+
+    /** System property haunted.channels, else audio/channels.conf; null for the built-in table. */
+    private Path channelConfig() {
+        String file = System.getProperty("haunted.channels", "");
+        if (!file.isEmpty()) return Paths.get(file);
+        return assets.find(ResourceAudio.AUDIO + "channels.conf");
+    }
+
+    /** Audio executor only: disk episodes, plus bundled ones for names the disk folder lacks. */
+    private void publishEpisodes(ChannelTable t, String folder, List<ChannelTable.Spec> specs,
+                                 List<ChannelLibrary.Episode> onDisk) {
+        List<Path> episodes = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (ChannelLibrary.Episode e : onDisk) {
+            episodes.add(e.path());
+            names.add(e.path().getFileName().toString());
+            if (e.frames() > 0) episodeFrames.put(e.path(), e.frames() * MIXER_RATE / e.sampleRate()); // known from the index
+        }
+        for (Path p : assets.listBundled(ResourceAudio.AUDIO + folder, ".wav")) {
+            if (names.add(p.getFileName().toString())) episodes.add(p);
+        }
+        for (ChannelTable.Spec s : specs) t.assign(s, episodes);
+        // Build device-native copies in the background; plays pick them up once ready
+        player.getTranscodeCache().prepare(episodes);
+    }
+
+    /** Audio executor only: one channel per disk subfolder of a "folders" range. */
+    private void loadSubfolders(ChannelTable t, ChannelTable.Spec s) {
+        Map<String, List<Path>> lists = Map.of();
+        if (diskAudioRoot != null) {
+            Path root = diskAudioRoot.resolve(s.arg);
+            LibraryScanner.ChannelLists sink = new LibraryScanner.ChannelLists(root, MAX_PER_CHANNEL);
+            System.out.println("[Channels] " + s.arg + ": " + LibraryScanner.shared().scan(root, 2, sink));
+            lists = sink.lists();
+            episodeFrames.putAll(sink.frameLengths(MIXER_RATE)); // live schedules need no second header read
+        }
+        t.assignFolders(s, lists);
+    }
+
+    /** Length of {@code episode} in mixer frames for its broadcast schedule; 0 if unknown. */
+    private long mixerFrames(Path episode) {
+        return episodeFrames.computeIfAbsent(episode, ChannelManagerSwing::readMixerFrames);
+    }
+
+    /** Episode length from its WAV header (one small read), else from Java Sound; 0 if unknown. */
+    private static long readMixerFrames(Path episode) {
+        WavFile.Header h = null;
+        if (episode.getFileSystem() == FileSystems.getDefault()) {
+            try (FileChannel ch = FileChannel.open(episode, StandardOpenOption.READ)) {
+                h = WavFile.readHeader(ch);
+            } catch (IOException | RuntimeException ignored) {
             }
-        } catch (Exception ignored) {}
-        return out;
+        } else {
+            WavFile mapped = WavFile.open(episode); // stored jar entry
+            if (mapped != null) h = mapped.header();
+        }
+        if (h != null && h.knownFrames()) return h.frames() * MIXER_RATE / h.sampleRate;
+        try (AudioInputStream in = AudioPlayer.audioStream(episode)) {
+            long frames = in.getFrameLength();
+            float rate = in.getFormat().getFrameRate();
+            return (frames > 0 && rate > 0) ? (long) (frames * (double) MIXER_RATE / rate) : 0;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+
+    /**
+     * .wav files in asset folder {@code folder}: the disk copy of the folder and any bundled one
+     * (classpath folder or jar), from the asset index.
+     * Package-private so the benchmark module can time library scans.
+     */
+    List<Path> listWavsInFolder(String folder) {
+        return assets.list(folder, ".wav");
     }
 }
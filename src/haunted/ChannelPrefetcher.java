@@ -0,0 +1,414 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * ChannelPrefetcher
+ *  - Follows the tuning knob (position and velocity in channels, from RadioPanel) and opens
+ *    the channels it is heading for before it gets there: the episode each would play (on air
+ *    now for a live channel, else peeked from its shuffle bag) is opened at that frame and
+ *    the next few hundred ms decoded to memory in the mixer format.
+ *  - The faster the knob turns, the further ahead it looks; at rest it keeps both neighbours
+ *    of the current channel ready.
+ *  - Tuning to a prefetched channel is then a buffer swap: the ready source goes straight into
+ *    the new voice, with no file open, header parse or decode on the way. Playback continues
+ *    from the same open source, so the seam after the prefetched head is sample-exact.
+ *  - Prefetched audio is bounded by a byte budget; the entries farthest from the knob go first.
+ *  - Records tune-to-first-audio latency (tune request to the first mixed buffer of the new
+ *    channel), separately for prefetched and cold tunes, and reports p50/p99.
+ *
+ * Configured by system properties:
+ *   haunted.prefetch.bytes   decoded audio kept ahead (default 2 MiB, 0 disables prefetching)
+ *   haunted.prefetch.millis  audio decoded per channel (default 300)
+ */
+public final class ChannelPrefetcher {
+
+    private static final double HORIZON_SECONDS = 0.5; // how far ahead a moving knob looks
+    private static final int MAX_AHEAD = 6;
+    private static final double MOVING = 0.5;           // channels/s; slower counts as at rest
+
+    /** Tune-to-first-audio samples: the most recent {@code SAMPLES} of one kind of tune. */
+    public static final class Latency {
+        private static final int SAMPLES = 1024;
+        private final long[] ring = new long[SAMPLES];
+        private long count;
+
+        synchronized void record(long nanos) {
+            ring[(int) (count++ % SAMPLES)] = nanos;
+        }
+
+        public synchronized long count() {
+            return count;
+        }
+
+        /** Percentile {@code p} (0..100) of the recent samples, in milliseconds; 0 if none. */
+        public synchronized double percentileMillis(double p) {
+            int n = (int) Math.min(count, SAMPLES);
+            if (n == 0) return 0;
+            long[] sorted = Arrays.copyOf(ring, n);
+            Arrays.sort(sorted);
+            int i = (int) Math.ceil(p / 100.0 * n) - 1;
+            return sorted[Math.max(0, Math.min(n - 1, i))] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "n=%d, p50=%.2f ms, p99=%.2f ms",
+                    count(), percentileMillis(50), percentileMillis(99));
+        }
+    }
+
+    /** A channel opened ahead of time. */
+    private static final class Entry {
+        final int channel;
+        final Path episode;
+        final long headStart;   // frame the head starts at
+        final PcmSource rest;   // positioned just past the head
+        final ByteBuffer head;  // frames from headStart on, in the source's (mixer) format
+
+        Entry(int channel, Path episode, long headStart, PcmSource rest, ByteBuffer head) {
+            this.channel = channel;
+            this.episode = episode;
+            this.headStart = headStart;
+            this.rest = rest;
+            this.head = head;
+        }
+    }
+
+    private final AudioPlayer player;
+    private final CompletableFuture<ChannelTable> table;
+    private final long budgetBytes;
+    private final int headFrames;
+
+    private final Map<Integer, Entry> entries = new HashMap<>(); // guarded by this
+    private long usedBytes;
+    private double knob;                                        // last knob position, for eviction
+
+    // Only the latest knob motion matters: older ones still waiting are dropped
+    private final AtomicReference<double[]> pendingMotion = new AtomicReference<>();
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "channel-prefetch");
+        t.setDaemon(true);
+        t.setPriority(Thread.NORM_PRIORITY - 1); // never ahead of playback or a real tune
+        return t;
+    });
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final Latency prefetchedTunes = new Latency();
+    private final Latency coldTunes = new Latency();
+
+    /**
+     * @param budgetBytes decoded audio kept ahead (0 disables prefetching; latency is still measured)
+     * @param headMillis  audio decoded per prefetched channel
+     */
+    public ChannelPrefetcher(AudioPlayer player, CompletableFuture<ChannelTable> table, long budgetBytes, int headMillis) {
+        this.player = player;
+        this.table = table;
+        this.budgetBytes = Math.max(0, budgetBytes);
+        this.headFrames = (int) ((long) Math.max(1, headMillis) * (long) AudioMixer.FORMAT.getSampleRate() / 1000L);
+    }
+
+    /** Prefetcher configured from system properties. */
+    public static ChannelPrefetcher fromSystemProperties(AudioPlayer player, CompletableFuture<ChannelTable> table) {
+        return new ChannelPrefetcher(player, table,
+                Long.getLong("haunted.prefetch.bytes", 2L << 20),
+                Integer.getInteger("haunted.prefetch.millis", 300));
+    }
+
+    /**
+     * The knob is at {@code position} (fractional channel number) turning at {@code velocity}
+     * channels per second (negative: downwards). Returns at once; prefetching runs on the
+     * "channel-prefetch" thread. Any thread.
+     */
+    public void onTuning(double position, double velocity) {
+        if (budgetBytes == 0) return;
+        if (pendingMotion.getAndSet(new double[] { position, velocity }) == null) worker.execute(this::drainMotion);
+    }
+
+    /**
+     * Claim channel {@code channel}'s prefetched source if its head covers {@code frame} of
+     * {@code episode}; null if not (then the caller opens the episode itself). The caller owns
+     * the result and seeks it to {@code frame}, which is then served from memory.
+     */
+    PcmSource take(int channel, Path episode, long frame) {
+        Entry e;
+        synchronized (this) {
+            e = entries.remove(channel);
+            if (e != null) usedBytes -= e.head.capacity();
+        }
+        if (e != null && e.episode.equals(episode) && frame >= e.headStart
+                && frame < e.headStart + e.head.remaining() / (e.rest.channels() * 2)) {
+            hits.incrementAndGet();
+            return new Prefetched(e.head, e.headStart, e.rest);
+        }
+        // The channel's episodes changed since, or (live) the broadcast has moved past the head
+        if (e != null) e.rest.close();
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * {@code source}, reporting the time from {@code requestNanos} to its first mixed buffer
+     * as one tune (completing {@code heard} with it, if given).
+     */
+    PcmSource timed(PcmSource source, boolean wasPrefetched, long requestNanos, CompletableFuture<Long> heard) {
+        return new FirstAudio(source, wasPrefetched ? prefetchedTunes : coldTunes, requestNanos, heard);
+    }
+
+    /** Wait until every knob motion reported so far has been prefetched (benchmarks). */
+    void awaitIdle() {
+        try {
+            worker.submit(() -> {}).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+        }
+    }
+
+    /** Drop everything prefetched, e.g. on power off. */
+    public void clear() {
+        List<Entry> dropped;
+        synchronized (this) {
+            dropped = new ArrayList<>(entries.values());
+            entries.clear();
+            usedBytes = 0;
+        }
+        for (Entry e : dropped) e.rest.close();
+    }
+
+    // ---------- Stats ----------
+    /** Tunes served from a prefetched channel. */
+    public long hits()        { return hits.get(); }
+    /** Episode tunes that had to open their channel cold. */
+    public long misses()      { return misses.get(); }
+    /** Channels opened ahead of time. */
+    public long prefetched()  { return prefetched.get(); }
+    public long evictions()   { return evictions.get(); }
+    public long budgetBytes() { return budgetBytes; }
+    public synchronized long usedBytes() { return usedBytes; }
+    /** Tune-to-first-audio of tunes served from a prefetched channel. */
+    public Latency prefetchedLatency() { return prefetchedTunes; }
+    /** Tune-to-first-audio of every other tune. */
+    public Latency coldLatency()       { return coldTunes; }
+
+    @Override
+    public String toString() {
+        return "ChannelPrefetcher[hits=" + hits() + ", misses=" + misses() + ", prefetched=" + prefetched()
+                + ", evictions=" + evictions() + ", used=" + usedBytes() + "/" + budgetBytes + " bytes"
+                + ", prefetched tunes: " + prefetchedTunes + ", cold tunes: " + coldTunes + "]";
+    }
+
+    // ---------- Internals ----------
+
+    /** Worker thread: prefetch for the latest knob motion until none is waiting. */
+    private void drainMotion() {
+        double[] m;
+        while ((m = pendingMotion.getAndSet(null)) != null) {
+            ChannelTable t = table.getNow(null);
+            if (t == null) return;
+            for (int ch : predict(t, m[0], m[1])) {
+                if (pendingMotion.get() != null) break; // the knob moved on: replan
+                prefetch(t, ch);
+            }
+        }
+    }
+
+    /** Dial channels the knob is likely to land on next, most likely first. */
+    private List<Integer> predict(ChannelTable t, double position, double velocity) {
+        synchronized (this) {
+            knob = position;
+        }
+        int here = (int) Math.round(position);
+        int dir = (velocity > MOVING) ? 1 : (velocity < -MOVING) ? -1 : 0;
+        List<Integer> out = new ArrayList<>();
+        out.add(here);
+        if (dir == 0) {
+            out.add(here + 1);
+            out.add(here - 1);
+        } else {
+            int ahead = (int) Math.min(MAX_AHEAD, Math.max(1, Math.ceil(Math.abs(velocity) * HORIZON_SECONDS)));
+            for (int k = 1; k <= ahead; k++) out.add(here + dir * k);
+            out.add(here - dir); // overshoot and come back
+        }
+        out.removeIf(ch -> ch < t.dialFirst() || ch > t.dialLast());
+        return out;
+    }
+
+    /** Open what channel {@code ch} would play now and decode its head, unless that is still fresh. */
+    private void prefetch(ChannelTable t, int ch) {
+        ChannelTable.Channel channel = t.get(ch);
+        if (channel == null || channel.kind != ChannelTable.Kind.EPISODES) return;
+        BroadcastSchedule.Cue cue = channel.peekCue(System.currentTimeMillis());
+        if (cue == null) return;
+        synchronized (this) {
+            Entry have = entries.get(ch);
+            // A live channel moves on: a head that has mostly gone by is read again
+            if (have != null && have.episode.equals(cue.episode)
+                    && cue.frame - have.headStart < headFrames / 2) return;
+        }
+
+        PcmSource source = player.open(cue.episode);
+        if (source == null) return;
+        long start = (cue.frame > 0 && source.seek(cue.frame)) ? cue.frame : 0;
+        ByteBuffer head = readHead(source);
+        if (head == null) {
+            source.close();
+            return;
+        }
+
+        List<Entry> dropped = new ArrayList<>();
+        synchronized (this) {
+            Entry old = entries.put(ch, new Entry(ch, cue.episode, start, source, head));
+            if (old != null) {
+                usedBytes -= old.head.capacity();
+                dropped.add(old);
+            }
+            usedBytes += head.capacity();
+            evictFarthest(dropped);
+        }
+        prefetched.incrementAndGet();
+        for (Entry e : dropped) e.rest.close();
+    }
+
+    /** Caller holds the lock. Drop the entries farthest from the knob until we fit the budget. */
+    private void evictFarthest(List<Entry> dropped) {
+        while (usedBytes > budgetBytes && !entries.isEmpty()) {
+            Entry far = null;
+            for (Entry e : entries.values()) {
+                if (far == null || Math.abs(e.channel - knob) > Math.abs(far.channel - knob)) far = e;
+            }
+            entries.remove(far.channel);
+            usedBytes -= far.head.capacity();
+            dropped.add(far);
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Copy of the first {@code headFrames} frames of {@code source}; null if it yields nothing. */
+    private ByteBuffer readHead(PcmSource source) {
+        int frameSize = source.channels() * 2;
+        ByteBuffer head = ByteBuffer.allocate(headFrames * frameSize).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (head.hasRemaining()) {
+                ByteBuffer pcm = source.next(head.remaining() / frameSize);
+                if (pcm == null) break; // shorter than the head: all of it is prefetched
+                head.put(pcm);
+            }
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+        head.flip();
+        if (!head.hasRemaining()) return null;
+        return (head.limit() == head.capacity()) ? head : ByteBuffer.allocate(head.limit()).order(ByteOrder.LITTLE_ENDIAN).put(head).flip();
+    }
+
+    /** A prefetched head (from frame headStart) followed by the rest of the same open source. */
+    private static final class Prefetched implements PcmSource {
+        private final ByteBuffer window;
+        private final long headStart;
+        private final PcmSource rest;
+        private final int frameSize;
+        private final int headBytes;
+        private int pos;
+        private boolean restAtHeadEnd = true; // rest still where the head ends: no re-seek needed
+
+        Prefetched(ByteBuffer head, long headStart, PcmSource rest) {
+            this.window = head.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            this.headStart = headStart;
+            this.rest = rest;
+            this.frameSize = rest.channels() * 2;
+            this.headBytes = head.capacity();
+        }
+
+        @Override public int channels() { return rest.channels(); }
+
+        @Override public long frameLength() { return rest.frameLength(); }
+
+        @Override
+        public ByteBuffer next(int maxFrames) throws IOException {
+            if (pos < headBytes) {
+                int bytes = Math.min(headBytes - pos, maxFrames * frameSize);
+                window.limit(pos + bytes).position(pos);
+                pos += bytes;
+                return window;
+            }
+            restAtHeadEnd = false;
+            return rest.next(maxFrames);
+        }
+
+        @Override
+        public boolean seek(long frame) {
+            long headEnd = headStart + headBytes / frameSize;
+            if (frame >= headStart && frame < headEnd) {
+                // Seeking a resampler resets its filter, so leave rest alone unless it moved:
+                // the head-to-rest seam then stays sample-exact
+                if (!restAtHeadEnd) {
+                    if (!rest.seek(headEnd)) return false;
+                    restAtHeadEnd = true;
+                }
+                pos = (int) ((frame - headStart) * frameSize);
+            } else {
+                restAtHeadEnd = false;
+                if (!rest.seek(frame)) return false;
+                pos = headBytes;
+            }
+            return true;
+        }
+
+        @Override public void close() { rest.close(); }
+    }
+
+    /** Records the latency of a tune when the mixer first pulls audio from it. */
+    private static final class FirstAudio implements PcmSource {
+        private final PcmSource source;
+        private final Latency latency;
+        private final long requestNanos;
+        private final CompletableFuture<Long> heard;
+        private boolean started;
+
+        FirstAudio(PcmSource source, Latency latency, long requestNanos, CompletableFuture<Long> heard) {
+            this.source = source;
+            this.latency = latency;
+            this.requestNanos = requestNanos;
+            this.heard = heard;
+        }
+
+        @Override public int channels() { return source.channels(); }
+
+        @Override public long frameLength() { return source.frameLength(); }
+
+        @Override
+        public ByteBuffer next(int maxFrames) throws IOException {
+            ByteBuffer pcm = source.next(maxFrames);
+            if (!started && pcm != null) {
+                started = true;
+                long nanos = System.nanoTime() - requestNanos;
+                latency.record(nanos);
+                if (heard != null) heard.complete(nanos);
+            }
+            return pcm;
+        }
+
+        @Override public boolean seek(long frame) { return source.seek(frame); }
+
+        @Override public void close() { source.close(); }
+    }
+}
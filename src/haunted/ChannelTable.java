@@ -0,0 +1,304 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * ChannelTable
+ *  - Maps channel numbers (any range, hundreds of channels) to what they play: an episode
+ *    set, a static burst, or the ghost broadcast.
+ *  - Each episode channel draws through its own {@link ShuffleBag}, so nothing repeats until
+ *    the channel's whole set has played; or, once the table is {@link #goLive live}, runs as a
+ *    virtual station on its {@link BroadcastSchedule}, joined wherever it has got to.
+ *  - Configured by lines of "channels kind argument" (see {@link #DEFAULTS}); '#' starts a
+ *    comment. Kinds:
+ *      folder  X  episodes in audio/X; over a range, split round-robin so each channel
+ *                 gets its own share (or the whole set, if there are fewer episodes)
+ *      folders X  one channel per subfolder of audio/X, in name order, from the range start
+ *      tag     W  every episode of the folder channels whose file name has the word W
+ *      static  MS a static burst of MS milliseconds
+ *      ghost      the ghost broadcast with its hidden Morse message
+ *      dial       (no argument) the channels the tuning knob sweeps; default: the span of
+ *                 all non-ghost channels
+ *  - The table only holds the mapping; ChannelManagerSwing loads the episodes into it.
+ */
+public final class ChannelTable {
+
+    /** Built-in table: the original four podcast channels, the riddle static and 666. */
+    public static final List<String> DEFAULTS = List.of(
+            "1-4   folder  spanish_podcast",
+            "5     static  600",
+            "666   ghost",
+            "1-5   dial");
+
+    public enum Kind { EPISODES, STATIC, GHOST }
+
+    /** One configuration line: channels {@code first..last} of one kind. */
+    public static final class Spec {
+        public final int first;
+        public final int last;
+        public final String type;    // folder, folders, tag, static, ghost
+        public final String arg;
+
+        Spec(int first, int last, String type, String arg) {
+            this.first = first;
+            this.last = last;
+            this.type = type;
+            this.arg = arg;
+        }
+
+        int count() { return last - first + 1; }
+    }
+
+    /** One tunable channel. */
+    public static final class Channel {
+        public final int number;
+        public final Kind kind;
+        public final String label;
+        public final int millis;                  // STATIC only
+        private List<Path> episodes = List.of();  // EPISODES only
+        private ShuffleBag<Path> bag;
+        private BroadcastSchedule schedule;       // live channels only
+
+        Channel(int number, Kind kind, String label, int millis) {
+            this.number = number;
+            this.kind = kind;
+            this.label = label;
+            this.millis = millis;
+        }
+
+        public synchronized List<Path> episodes() { return episodes; }
+
+        /** The live schedule, or null if the channel shuffles episodes instead. */
+        public synchronized BroadcastSchedule schedule() { return schedule; }
+
+        /**
+         * What to play when tuned in at {@code epochMillis}: on a live channel, the episode and
+         * frame on air right then; otherwise the next episode of the shuffle bag (never
+         * repeating one until the whole set has played) from its start. Null if empty.
+         */
+        public synchronized BroadcastSchedule.Cue cue(long epochMillis) {
+            if (schedule != null) return schedule.at(epochMillis);
+            Path p = (bag != null) ? bag.next() : null;
+            return (p != null) ? new BroadcastSchedule.Cue(p, 0, -1) : null;
+        }
+
+        /** What {@link #cue} would return at {@code epochMillis}, without drawing from the bag. */
+        public synchronized BroadcastSchedule.Cue peekCue(long epochMillis) {
+            if (schedule != null) return schedule.at(epochMillis);
+            Path p = (bag != null) ? bag.peek() : null;
+            return (p != null) ? new BroadcastSchedule.Cue(p, 0, -1) : null;
+        }
+
+        synchronized void setEpisodes(List<Path> list, Random rng, ToLongFunction<Path> liveLengths) {
+            episodes = Collections.unmodifiableList(new ArrayList<>(list));
+            bag = new ShuffleBag<>(episodes, rng);
+            schedule = (liveLengths != null) ? BroadcastSchedule.build(number, episodes, liveLengths) : null;
+        }
+    }
+
+    private final List<Spec> specs;
+    private final NavigableMap<Integer, Channel> channels = new ConcurrentSkipListMap<>();
+    private final int dialFirst;
+    private final int dialLast;
+    private final Random rng;
+    private volatile ToLongFunction<Path> liveLengths; // set: episode channels broadcast live
+
+    private ChannelTable(List<Spec> specs, int dialFirst, int dialLast, Random rng) {
+        this.specs = specs;
+        this.dialFirst = dialFirst;
+        this.dialLast = dialLast;
+        this.rng = rng;
+        for (Spec s : specs) {
+            switch (s.type) {
+                case "static":
+                    int ms = parseInt(s.arg, 600);
+                    for (int n = s.first; n <= s.last; n++) channels.put(n, new Channel(n, Kind.STATIC, "static", ms));
+                    break;
+                case "ghost":
+                    for (int n = s.first; n <= s.last; n++) channels.put(n, new Channel(n, Kind.GHOST, "ghost", 0));
+                    break;
+                case "folders":
+                    break; // numbered once the subfolders are known, see assignFolders
+                default:
+                    for (int n = s.first; n <= s.last; n++) channels.put(n, new Channel(n, Kind.EPISODES, s.arg, 0));
+            }
+        }
+    }
+
+    /** Table from configuration lines; bad lines are logged and skipped. */
+    public static ChannelTable parse(List<String> lines, Random rng) {
+        List<Spec> specs = new ArrayList<>();
+        int[] dial = null;
+        int lineNo = 0;
+        for (String raw : lines) {
+            lineNo++;
+            int hash = raw.indexOf('#');
+            String line = (hash >= 0 ? raw.substring(0, hash) : raw).trim();
+            if (line.isEmpty()) continue;
+            String[] f = line.split("\\s+");
+            try {
+                String[] range = f[0].split("-", 2);
+                int first = Integer.parseInt(range[0]);
+                int last = (range.length > 1) ? Integer.parseInt(range[1]) : first;
+                String type = (f.length > 1) ? f[1].toLowerCase(Locale.ROOT) : "";
+                String arg = (f.length > 2) ? String.join(" ", Arrays.copyOfRange(f, 2, f.length)) : "";
+                if (last < first) throw new IllegalArgumentException("empty range");
+                switch (type) {
+                    case "dial":
+                        dial = new int[] { first, last };
+                        break;
+                    case "folder": case "folders": case "tag":
+                        if (arg.isEmpty()) throw new IllegalArgumentException(type + " needs an argument");
+                        specs.add(new Spec(first, last, type, arg));
+                        break;
+                    case "static": case "ghost":
+                        specs.add(new Spec(first, last, type, arg));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("unknown kind '" + type + "'");
+                }
+            } catch (RuntimeException e) {
+                System.out.println("[Channels] line " + lineNo + " ignored (" + e.getMessage() + "): " + raw);
+            }
+        }
+
+        if (dial == null) {
+            int lo = Integer.MAX_VALUE, hi = Integer.MIN_VALUE;
+            for (Spec s : specs) {
+                if (s.type.equals("ghost")) continue;
+                lo = Math.min(lo, s.first);
+                hi = Math.max(hi, s.last);
+            }
+            dial = (lo <= hi) ? new int[] { lo, hi } : new int[] { 1, 1 };
+        }
+        return new ChannelTable(Collections.unmodifiableList(specs), dial[0], dial[1], rng);
+    }
+
+    /**
+     * Table from {@code config} if it is readable, otherwise {@link #DEFAULTS}.
+     * @param config a channels.conf file (on disk or inside a jar), or null
+     */
+    public static ChannelTable load(Path config, Random rng) {
+        if (config != null) {
+            try {
+                return parse(Files.readAllLines(config), rng);
+            } catch (IOException | RuntimeException e) {
+                System.out.println("[Channels] cannot read " + config + ", using defaults: " + e);
+            }
+        }
+        return parse(DEFAULTS, rng);
+    }
+
+    public List<Spec> specs()     { return specs; }
+    public Channel get(int number) { return channels.get(number); }
+    public int size()              { return channels.size(); }
+    /** First channel on the tuning dial. */
+    public int dialFirst()         { return dialFirst; }
+    /** Last channel on the tuning dial. */
+    public int dialLast()          { return dialLast; }
+
+    /** All channels in number order. */
+    public List<Channel> channels() {
+        return new ArrayList<>(channels.values());
+    }
+
+    // ---------- Loading (ChannelManagerSwing's audio thread) ----------
+
+    /**
+     * Run episode channels as live stations from now on: episodes assigned later get a
+     * BroadcastSchedule, timed by {@code mixerFrames} (episode length in mixer frames, 0 if
+     * unknown).
+     */
+    void goLive(ToLongFunction<Path> mixerFrames) {
+        liveLengths = mixerFrames;
+    }
+
+    /** Give a "folder" spec's channels their episodes: a round-robin share each, or all of them. */
+    void assign(Spec s, List<Path> episodes) {
+        int count = s.count();
+        boolean split = count > 1 && episodes.size() >= count;
+        for (int k = 0; k < count; k++) {
+            Channel c = channels.get(s.first + k);
+            if (c == null || c.kind != Kind.EPISODES) continue;
+            if (!split) {
+                c.setEpisodes(episodes, rng, liveLengths);
+                continue;
+            }
+            List<Path> share = new ArrayList<>(episodes.size() / count + 1);
+            for (int i = k; i < episodes.size(); i += count) share.add(episodes.get(i));
+            c.setEpisodes(share, rng, liveLengths);
+        }
+    }
+
+    /** One channel per subfolder of a "folders" spec, numbered from its first channel. */
+    void assignFolders(Spec s, Map<String, List<Path>> bySubfolder) {
+        for (int n = s.first; n <= s.last; n++) channels.remove(n);
+        int n = s.first;
+        for (Map.Entry<String, List<Path>> e : bySubfolder.entrySet()) {
+            if (e.getKey().isEmpty() || e.getValue().isEmpty()) continue; // files at the top level
+            if (n > s.last) {
+                System.out.println("[Channels] " + s.arg + ": more subfolders than channels " + s.first + "-" + s.last
+                        + ", skipping from " + e.getKey());
+                break;
+            }
+            Channel c = new Channel(n, Kind.EPISODES, e.getKey(), 0);
+            c.setEpisodes(e.getValue(), rng, liveLengths);
+            channels.put(n++, c);
+        }
+    }
+
+    /** Refill every "tag" channel from the episodes of the other channels. */
+    void assignTags() {
+        for (Spec s : specs) {
+            if (!s.type.equals("tag")) continue;
+            String word = s.arg.toLowerCase(Locale.ROOT);
+            LinkedHashSet<Path> tagged = new LinkedHashSet<>(); // first-seen order, O(1) dedup
+            for (Channel c : channels.values()) {
+                if (c.kind != Kind.EPISODES || isTag(c.number)) continue; // not by label: a folder may share it
+                for (Path p : c.episodes()) {
+                    if (hasWord(p.getFileName().toString(), word)) tagged.add(p);
+                }
+            }
+            assign(s, new ArrayList<>(tagged));
+        }
+    }
+
+    // ---------- Internals ----------
+
+    /** True if channel {@code n} lies in the range of a "tag" spec. */
+    private boolean isTag(int n) {
+        for (Spec s : specs) {
+            if (s.type.equals("tag") && n >= s.first && n <= s.last) return true;
+        }
+        return false;
+    }
+
+    /** True if {@code name}, split on anything but letters and digits, contains {@code word}. */
+    private static boolean hasWord(String name, String word) {
+        for (String w : name.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+            if (w.equals(word)) return true;
+        }
+        return false;
+    }
+
+    private static int parseInt(String s, int fallback) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
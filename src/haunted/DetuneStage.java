@@ -0,0 +1,103 @@
+package haunted;
+
+/**
+ * DetuneStage
+ *  - The analog side of the tuning dial, applied in place on the mixer's float buffer:
+ *    between detents the station fades into synthesized static, and what is left of it is
+ *    pushed through a band-pass that narrows as the knob moves off-station (the thin,
+ *    boxy "half tuned" sound).
+ *  - Detune 0 is dead on a station and the stage does nothing at all; 1 is halfway between
+ *    two stations, where only static is left.
+ *  - The band-pass is a state-variable filter with trapezoidal integrators, which stays
+ *    stable and click-free while its Q follows the knob. Its coefficients are worked out
+ *    once per buffer without trigonometry; the detune itself is ramped frame by frame
+ *    across the buffer, so a dragged knob never zippers.
+ *  - Allocates nothing: a few floats of filter state and one StaticNoise generator.
+ *
+ * The knob position arrives from the UI through an AudioScheduler command, so the stage
+ * itself is only ever touched by the audio thread.
+ */
+final class DetuneStage {
+
+    /** Distance from a detent (in channels) that still counts as dead on the station. */
+    static final double CAPTURE = 0.06;
+
+    private static final float CENTER_HZ = 1800f;   // where a mistuned AM station still comes through
+    private static final float Q_ON = 0.7f;         // filter Q just off the station...
+    private static final float Q_OFF = 6f;          // ...and halfway to the next one
+    private static final float NOISE_LEVEL = 0.22f; // matches TunePipeline's inter-station static
+    private static final float G = (float) Math.tan(Math.PI * CENTER_HZ / AudioMixer.FORMAT.getSampleRate());
+    private static final float DENORMAL = 1e-20f;
+
+    private final StaticNoise noise = new StaticNoise(1f, 0x5DEECE66DL); // gain is passed per buffer
+
+    private float target;  // detune requested by the knob (0..1)
+    private float current; // detune reached at the end of the last buffer
+    private float ic1L, ic2L, ic1R, ic2R; // filter integrator state per side
+
+    /** Set how far off-station the knob is (0..1); ramped in over the next buffer. */
+    void setDetune(float d) {
+        target = Math.max(0f, Math.min(1f, d));
+    }
+
+    /**
+     * Knob offset from the nearest detent, in channels (-0.5..0.5), to detune: zero within
+     * the CAPTURE band around a station, rising linearly to 1 halfway between two.
+     */
+    static float forOffset(double offset) {
+        double off = Math.abs(offset);
+        if (off <= CAPTURE) return 0f;
+        return (float) Math.min(1.0, (off - CAPTURE) / (0.5 - CAPTURE));
+    }
+
+    /** Detune {@code frames} interleaved stereo frames of {@code buf} in place. */
+    void apply(float[] buf, int frames) {
+        final float from = current, to = target;
+        current = to;
+        if (from == 0f && to == 0f) {
+            // On station: bypass, and start clean the next time the knob moves off
+            ic1L = ic2L = ic1R = ic2R = 0f;
+            return;
+        }
+
+        // Filter for where the knob is heading; k = 1/Q, and k * band-pass has unity peak gain
+        final float k = 1f / (Q_ON + (Q_OFF - Q_ON) * Math.max(from, to));
+        final float a1 = 1f / (1f + G * (G + k));
+        final float a2 = G * a1;
+        final float a3 = G * a2;
+
+        float l1 = ic1L, l2 = ic2L, r1 = ic1R, r2 = ic2R;
+        float d = from;
+        final float step = (to - from) / frames;
+        for (int i = 0, o = 0; i < frames; i++, o += 2) {
+            d += step;
+            float station = 1f - d * d;   // what is left of the signal
+            float dry = station * (1f - d);
+            float band = station * d * k; // the further off, the more of it is band-passed
+
+            float x = buf[o];
+            float v3 = x - l2;
+            float v1 = a1 * l1 + a2 * v3;
+            float v2 = l2 + a2 * l1 + a3 * v3;
+            l1 = 2f * v1 - l1;
+            l2 = 2f * v2 - l2;
+            buf[o] = dry * x + band * v1;
+
+            x = buf[o + 1];
+            v3 = x - r2;
+            v1 = a1 * r1 + a2 * v3;
+            v2 = r2 + a2 * r1 + a3 * v3;
+            r1 = 2f * v1 - r1;
+            r2 = 2f * v2 - r2;
+            buf[o + 1] = dry * x + band * v1;
+        }
+        // Silence decays the integrators into denormals, which are slow on most CPUs
+        ic1L = Math.abs(l1) < DENORMAL ? 0f : l1;
+        ic2L = Math.abs(l2) < DENORMAL ? 0f : l2;
+        ic1R = Math.abs(r1) < DENORMAL ? 0f : r1;
+        ic2R = Math.abs(r2) < DENORMAL ? 0f : r2;
+
+        // Static rises as the station fades (equal-power-ish: d(2 - d) against 1 - d²)
+        noise.add(buf, frames, NOISE_LEVEL * from * (2f - from), NOISE_LEVEL * to * (2f - to));
+    }
+}
@@ -0,0 +1,84 @@
+package haunted;
+
+import java.awt.EventQueue;
+import java.awt.GraphicsEnvironment;
+
+/**
+ * EdtWatchdog
+ *  - Logs whenever the Swing event-dispatch thread is blocked for longer than a threshold,
+ *    with the EDT's stack at that moment, so a freeze points straight at the code causing it.
+ *  - A daemon thread posts a tiny heartbeat to the event queue; if the heartbeat hasn't
+ *    run after the threshold, the EDT is stuck. When it finally runs, the total stall
+ *    length is logged too.
+ *  - Costs one invokeLater per period; nothing at all in headless mode.
+ *
+ * Threshold comes from the system property haunted.edtWatchdog.ms (default 250, 0 disables).
+ */
+public final class EdtWatchdog {
+
+    private static EdtWatchdog running;
+
+    private final long thresholdNanos;
+    private volatile long postedAt;          // when the pending heartbeat was posted, 0 if none
+    private volatile Thread edt;
+
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = thresholdMillis * 1_000_000L;
+    }
+
+    /** Start the watchdog once per JVM, configured from system properties. */
+    public static synchronized void start() {
+        long ms = Long.getLong("haunted.edtWatchdog.ms", 250L);
+        if (running != null || ms <= 0 || GraphicsEnvironment.isHeadless()) return;
+        running = new EdtWatchdog(ms);
+        Thread t = new Thread(running::run, "edt-watchdog");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    // ---------- Internals ----------
+
+    private void run() {
+        long sleepMillis = Math.max(10, thresholdNanos / 2_000_000L);
+        try {
+            while (true) {
+                long posted = System.nanoTime();
+                postedAt = posted;
+                EventQueue.invokeLater(this::heartbeat);
+
+                boolean reported = false;
+                while (postedAt == posted) {
+                    Thread.sleep(sleepMillis);
+                    long stalled = System.nanoTime() - posted;
+                    if (!reported && postedAt == posted && stalled > thresholdNanos) {
+                        reported = true;
+                        report(stalled);
+                    }
+                }
+                Thread.sleep(sleepMillis);
+            }
+        } catch (InterruptedException ignored) {
+            // daemon: ends with the JVM
+        }
+    }
+
+    /** Runs on the EDT: the queue is moving again. */
+    private void heartbeat() {
+        edt = Thread.currentThread();
+        long stalled = System.nanoTime() - postedAt;
+        postedAt = 0;
+        if (stalled > thresholdNanos) {
+            System.out.println("[EDT] event dispatch was blocked for " + stalled / 1_000_000L + " ms");
+        }
+    }
+
+    private void report(long stalledNanos) {
+        StringBuilder sb = new StringBuilder("[EDT] event dispatch blocked for over ")
+                .append(stalledNanos / 1_000_000L).append(" ms");
+        Thread t = edt;
+        if (t != null) {
+            for (StackTraceElement e : t.getStackTrace()) sb.append("\n\tat ").append(e);
+        }
+        System.out.println(sb);
+    }
+}
@@ -0,0 +1,81 @@
+package haunted;
+
+/**
+ * GainStage
+ *  - Software master volume applied in place on the mixer's float buffer (no allocation).
+ *  - Maps the 0..1 knob through a perceptual (decibel) curve, so equal knob travel
+ *    sounds like roughly equal loudness steps instead of "all the action at the top".
+ *  - Ramps towards a new target sample by sample over a short window, which removes
+ *    the zipper noise you hear when the volume knob is dragged.
+ *
+ * Used by AudioMixer when the line has no MASTER_GAIN control, or always when the
+ * system property haunted.audio.softwareGain=true is set.
+ */
+final class GainStage {
+
+    /** Loudness at the bottom of the knob before the final fade to silence. */
+    static final float MIN_DB = -40f;
+
+    private final int rampFrames;
+
+    private volatile float target;  // linear amplitude requested by the UI
+    private float current;          // render thread only
+    private float step;             // per-frame increment while ramping
+    private float rampingTo;        // target the current ramp was computed for
+
+    /** @param rampFrames frames over which a volume change is spread (e.g. ~20 ms) */
+    GainStage(int rampFrames, float volume0to1) {
+        this.rampFrames = Math.max(1, rampFrames);
+        this.target = perceptualGain(volume0to1);
+        this.current = target;
+        this.rampingTo = target;
+    }
+
+    /** Set the knob position (0..1); the change is ramped in on the render thread. */
+    void setVolume(float volume0to1) {
+        target = perceptualGain(volume0to1);
+    }
+
+    /**
+     * Knob position to linear amplitude: a straight line in dB from MIN_DB to 0 dB,
+     * with the bottom 10% of travel fading the rest of the way to true silence.
+     */
+    static float perceptualGain(float v) {
+        if (v <= 0f) return 0f;
+        if (v >= 1f) return 1f;
+        float amp = (float) Math.pow(10.0, MIN_DB * (1f - v) / 20.0);
+        return (v < 0.1f) ? amp * (v / 0.1f) : amp;
+    }
+
+    /** Same curve in decibels, for hardware MASTER_GAIN controls. */
+    static float perceptualDb(float v, float floorDb) {
+        float amp = perceptualGain(v);
+        if (amp <= 0f) return floorDb;
+        return Math.max(floorDb, (float) (20.0 * Math.log10(amp)));
+    }
+
+    /** Scale {@code frames} interleaved frames of {@code buf} in place. */
+    void apply(float[] buf, int frames, int channels) {
+        float t = target;
+        if (t != rampingTo) {
+            rampingTo = t;
+            step = (t - current) / rampFrames;
+        }
+
+        int i = 0;
+        final int n = frames * channels;
+        // Ramp portion: per-frame interpolation until we reach the target
+        while (current != t && i < n) {
+            current += step;
+            if ((step > 0f && current >= t) || (step < 0f && current <= t) || step == 0f) current = t;
+            for (int c = 0; c < channels; c++) buf[i + c] *= current;
+            i += channels;
+        }
+        // Steady portion
+        if (i < n) {
+            final float g = current;
+            if (g == 1f) return;
+            for (; i < n; i++) buf[i] *= g;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package haunted;
+
+import java.util.Random;
+
+/**
+ * The "glitchy broadcast" program as a single mixer voice:
+ * 2–4 segments of 4–9 s from the episode, each optionally followed by a 300–700 ms static
+ * burst. Segment and burst boundaries are counted in frames on the audio thread, so the
+ * switch between episode and static is sample-exact and gapless, and the episode cursor
+ * simply continues where the previous segment stopped. Bursts are synthesized (StaticNoise),
+ * so they never run out and never repeat.
+ */
+final class GlitchVoice extends AudioMixer.Voice {
+    private static final int RATE = (int) AudioMixer.FORMAT.getSampleRate();
+
+    private final PcmCursor episode;
+    private final StaticNoise noise;     // may be null: bursts become silence
+    private final double glitchChance;
+    private final Random rng;
+
+    private int segmentsLeft;
+    private long partLeft;               // frames left in the current segment or burst
+    private boolean inBurst;
+
+    /**
+     * @param episode      main audio, owned by this voice from now on
+     * @param noise        static for bursts, played at its own gain times this voice's; may be null
+     * @param glitchChance probability [0..1] of a burst after each segment
+     */
+    GlitchVoice(PcmCursor episode, StaticNoise noise, double glitchChance, Random rng) {
+        super(1f);
+        this.episode = episode;
+        this.noise = noise;
+        this.glitchChance = glitchChance;
+        this.rng = rng;
+        this.segmentsLeft = 2 + rng.nextInt(3); // 2–4 segments
+        startSegment();
+    }
+
+    @Override
+    protected int mix(float[] mix, int frames, float gain) {
+        int done = 0;
+        while (done < frames) {
+            if (partLeft == 0 && !advance()) break;
+
+            int want = (int) Math.min(frames - done, partLeft);
+            int n;
+            if (inBurst) {
+                float g = (noise != null) ? gain * noise.getGain() : 0f;
+                if (g > 0f) noise.add(mix, done, want, g, g);
+                n = want;
+            } else {
+                n = PcmVoice.mixFrom(episode, mix, done, want, gain);
+                if (n < want) return done + n; // episode finished
+            }
+            done += n;
+            partLeft -= n;
+        }
+        return done;
+    }
+
+    @Override
+    protected boolean seek(long frame) {
+        return episode.seek(frame);
+    }
+
+    @Override
+    protected void release() {
+        episode.close();
+    }
+
+    // ---------- Internals ----------
+
+    /** Move to the next burst or segment; false when the program is over. */
+    private boolean advance() {
+        if (!inBurst && rng.nextDouble() < glitchChance) {
+            inBurst = true;
+            partLeft = framesFor(300 + rng.nextInt(400)); // 300–700 ms
+            return true;
+        }
+        if (segmentsLeft == 0) return false;
+        startSegment();
+        return true;
+    }
+
+    private void startSegment() {
+        segmentsLeft--;
+        inBurst = false;
+        partLeft = framesFor(4000 + rng.nextInt(5000)); // 4–9 s
+    }
+
+    private static long framesFor(int millis) {
+        return (long) millis * RATE / 1000L;
+    }
+}
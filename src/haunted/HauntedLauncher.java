@@ -10,6 +10,7 @@ import javax.swing.*;
  */
 public class HauntedLauncher {
     public static void main(String[] args) {
+        EdtWatchdog.start(); // logs any UI freeze with the offending stack
         SwingUtilities.invokeLater(() -> {
             JFrame win = new JFrame("Ghost Frequency — Splash");
             win.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
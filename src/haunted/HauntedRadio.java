@@ -10,6 +10,7 @@ import java.awt.*;
  */
 public class HauntedRadio {
     public static void main(String[] args) {
+        EdtWatchdog.start(); // logs any UI freeze with the offending stack
         SwingUtilities.invokeLater(() -> {
             try {
                 UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
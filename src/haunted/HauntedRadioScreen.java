@@ -12,7 +12,7 @@ import java.nio.file.Paths;
  * - Bottom: controls to tune channels, stop audio, and adjust volume.
  *
  * Channels:
- *   1–4  -> play random Spanish spooky podcasts (with glitch bursts)
+ *   1–4  -> play Spanish spooky podcasts (with glitch bursts), shuffled without repeats
  *   5    -> shows a riddle dialog; correct answer unlocks 666
  *   666  -> ghost broadcast + hidden Morse message
  */
@@ -34,12 +34,13 @@ public class HauntedRadioScreen extends JFrame {
         setLocationRelativeTo(null);
         setLayout(new BorderLayout());
 
-        // Audio root (relative to working dir): audio/static.wav, audio/ghost_broadcast.wav, audio/spanish_podcasts/*.wav
+        // Audio root (relative to working dir): audio/ghost_broadcast.wav, audio/spanish_podcasts/*.wav (static is synthesized)
         Path audioRoot = Paths.get("audio");
         channels = new ChannelManagerSwing(audioRoot);
 
         // Center: custom-painted radio with animated GIF in the dial
         panel = new RadioPanel();
+        panel.listenForMorse(channels.getPlayer()); // decoded Morse shows up in the dial
         add(panel, BorderLayout.CENTER);
 
         // Bottom: control strip (buttons + volume + status)
@@ -98,11 +99,15 @@ public class HauntedRadioScreen extends JFrame {
         // Channel 666 -> ghost broadcast + Morse beeps
         ch666.addActionListener(evt -> {
             status.setText("Channel 666 — Ghost broadcast + Morse");
+            panel.clearDecodedText();
             channels.playGhost();
         });
 
         // Stop -> immediately stop any current audio
-        stopBtn.addActionListener(e -> channels.getPlayer().stopAudio());
+        stopBtn.addActionListener(e -> {
+            channels.stop();
+            panel.clearDecodedText();
+        });
     }
 
     /**
@@ -126,6 +131,7 @@ public class HauntedRadioScreen extends JFrame {
         // Ensure we extract just the digits (in case labels change later)
         int ch = Integer.parseInt(txt.replaceAll("\\D", ""));
         status.setText("Playing Channel " + ch + "...");
+        panel.clearDecodedText();
         channels.playChannel(ch);
     }
 
@@ -0,0 +1,328 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LibraryScanner
+ *  - Walks episode folders with a fork-join pool: each directory is a task, its
+ *    subdirectories are forked, and its .wav files are parsed in batches on other workers,
+ *    so one huge flat folder spreads across the pool as well as a deep tree does.
+ *  - Reads only the RIFF header of each file, through one small positional read
+ *    ({@link WavFile#readHeader(FileChannel, ByteBuffer)}); nothing is decoded or mapped.
+ *  - Results stream to a {@link Sink}; the scanner keeps nothing. A directory task never has
+ *    more than a few batches in flight, so memory stays bounded however large the folder.
+ *  - {@link ChannelLists} is a sink that groups episodes by folder and keeps a uniform random
+ *    sample of at most a fixed number per folder, so channel lists have a hard size cap. It
+ *    keeps each kept episode's length from the header it was given, so nothing is reopened.
+ *
+ * Pool size comes from the system property haunted.libraryScanner.threads (default: cores).
+ */
+public final class LibraryScanner {
+
+    private static final int BATCH = 256;         // files per parse task
+    private static final int HEADER_BYTES = 512;  // one read covers fmt + data in nearly every WAV
+
+    /** Receives scan results, concurrently from pool threads. */
+    public interface Sink {
+        /** Whether {@code file}'s header is needed; false skips it (e.g. unchanged since the last scan). */
+        default boolean wants(Path file, BasicFileAttributes attrs) {
+            return true;
+        }
+
+        /** One .wav file; {@code header} is null if it is not a WAV we can parse. */
+        void accept(Path file, BasicFileAttributes attrs, WavFile.Header header);
+    }
+
+    /** Counters of one scan. */
+    public static final class Stats {
+        public final long directories;
+        public final long files;        // .wav files seen
+        public final long headersRead;
+        public final long unreadable;   // .wav files without a parseable header
+        public final long failedDirectories;
+        public final long nanos;
+
+        Stats(long directories, long files, long headersRead, long unreadable, long failedDirectories, long nanos) {
+            this.directories = directories;
+            this.files = files;
+            this.headersRead = headersRead;
+            this.unreadable = unreadable;
+            this.failedDirectories = failedDirectories;
+            this.nanos = nanos;
+        }
+
+        public double filesPerSecond() {
+            return (nanos > 0) ? files * 1e9 / nanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "LibraryScanner.Stats[dirs=%d, wavs=%d, headers=%d, unreadable=%d, failedDirs=%d, %.1f ms, %.0f files/s]",
+                    directories, files, headersRead, unreadable, failedDirectories, nanos / 1e6, filesPerSecond());
+        }
+    }
+
+    private static final ThreadLocal<ByteBuffer> SCRATCH = ThreadLocal.withInitial(() -> ByteBuffer.allocate(HEADER_BYTES));
+
+    private final ForkJoinPool pool;
+
+    /** Scanner on its own pool of {@code threads} workers (0 = one per core). */
+    public LibraryScanner(int threads) {
+        this.pool = new ForkJoinPool((threads > 0) ? threads : Runtime.getRuntime().availableProcessors(),
+                p -> {
+                    ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+                    t.setName("library-scan-" + t.getPoolIndex());
+                    t.setDaemon(true);
+                    return t;
+                }, null, false);
+    }
+
+    /**
+     * The app's one scanner, sized from system properties, so libraries and rescans share a
+     * single pool instead of each leaving its own idle workers behind. Never shut it down.
+     */
+    public static LibraryScanner shared() {
+        return Shared.INSTANCE;
+    }
+
+    private static final class Shared {
+        static final LibraryScanner INSTANCE = new LibraryScanner(Integer.getInteger("haunted.libraryScanner.threads", 0));
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    /**
+     * Scan {@code root} down to {@code maxDepth} levels (1 = only the files in {@code root}),
+     * feeding every .wav file to {@code sink}. Blocks until done.
+     */
+    public Stats scan(Path root, int maxDepth, Sink sink) {
+        Counters c = new Counters();
+        long t0 = System.nanoTime();
+        if (Files.isDirectory(root)) pool.invoke(new DirTask(root, maxDepth, sink, c));
+        return new Stats(c.directories.get(), c.files.get(), c.headers.get(), c.unreadable.get(),
+                c.failed.get(), System.nanoTime() - t0);
+    }
+
+    /** Stop the pool's workers (they are daemons, so this is optional); not for {@link #shared}. */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    /**
+     * Sink that builds channel lists: playable episodes grouped by their folder relative to the
+     * scan root ("" for the root itself), each group a uniform random sample of at most
+     * {@code maxPerFolder} episodes (reservoir sampling), so memory is capped no matter how
+     * many files the library holds.
+     */
+    public static final class ChannelLists implements Sink {
+        private final Path root;
+        private final int maxPerFolder;
+        private final Map<String, Reservoir> folders = new ConcurrentHashMap<>();
+
+        public ChannelLists(Path root, int maxPerFolder) {
+            this.root = root;
+            this.maxPerFolder = Math.max(1, maxPerFolder);
+        }
+
+        @Override
+        public void accept(Path file, BasicFileAttributes attrs, WavFile.Header header) {
+            if (header == null) return;
+            Path parent = root.relativize(file).getParent();
+            String folder = (parent == null) ? "" : parent.toString().replace('\\', '/');
+            long frames = header.knownFrames() ? header.frames() : -1; // compressed: length unknown here
+            folders.computeIfAbsent(folder, k -> new Reservoir(maxPerFolder)).offer(file, frames, header.sampleRate);
+        }
+
+        /** Folder to episodes, sorted by folder and then by file name. */
+        public Map<String, List<Path>> lists() {
+            Map<String, List<Path>> out = new TreeMap<>();
+            for (Map.Entry<String, Reservoir> e : folders.entrySet()) out.put(e.getKey(), e.getValue().sorted());
+            return out;
+        }
+
+        /**
+         * Length of every kept PCM episode in frames at {@code rate} (e.g. the mixer's), from
+         * the scanned headers; episodes whose length the header does not give are left out.
+         */
+        public Map<Path, Long> frameLengths(long rate) {
+            Map<Path, Long> out = new HashMap<>();
+            for (Reservoir r : folders.values()) r.frameLengths(rate, out);
+            return out;
+        }
+
+        /** Playable episodes seen in {@code folder}, including those not kept. */
+        public long seen(String folder) {
+            Reservoir r = folders.get(folder);
+            return (r == null) ? 0 : r.seen();
+        }
+    }
+
+    // ---------- Internals ----------
+
+    private static final class Counters {
+        final AtomicLong directories = new AtomicLong();
+        final AtomicLong files = new AtomicLong();
+        final AtomicLong headers = new AtomicLong();
+        final AtomicLong unreadable = new AtomicLong();
+        final AtomicLong failed = new AtomicLong();
+    }
+
+    /** Algorithm R: after n offers, each offered path is kept with probability cap/n. */
+    private static final class Reservoir {
+        private final Path[] kept;
+        private final long[] frames;   // per kept episode, -1 if unknown
+        private final int[] rates;
+        private long seen;
+
+        Reservoir(int cap) {
+            this.kept = new Path[cap];
+            this.frames = new long[cap];
+            this.rates = new int[cap];
+        }
+
+        synchronized void offer(Path p, long frameCount, int rate) {
+            long n = seen++;
+            int slot = -1;
+            if (n < kept.length) {
+                slot = (int) n;
+            } else {
+                long j = ThreadLocalRandom.current().nextLong(n + 1);
+                if (j < kept.length) slot = (int) j;
+            }
+            if (slot < 0) return;
+            kept[slot] = p;
+            frames[slot] = frameCount;
+            rates[slot] = rate;
+        }
+
+        synchronized void frameLengths(long rate, Map<Path, Long> out) {
+            for (int i = 0; i < kept.length && i < seen; i++) {
+                if (frames[i] >= 0 && rates[i] > 0) out.put(kept[i], frames[i] * rate / rates[i]);
+            }
+        }
+
+        synchronized long seen() {
+            return seen;
+        }
+
+        synchronized List<Path> sorted() {
+            List<Path> out = new ArrayList<>((int) Math.min(seen, kept.length));
+            for (int i = 0; i < kept.length && i < seen; i++) out.add(kept[i]);
+            Collections.sort(out);
+            return out;
+        }
+    }
+
+    private final class DirTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final int depth;
+        private final Sink sink;
+        private final Counters c;
+
+        DirTask(Path dir, int depth, Sink sink, Counters c) {
+            this.dir = dir;
+            this.depth = depth;
+            this.sink = sink;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            c.directories.incrementAndGet();
+            Deque<ForkJoinTask<?>> inFlight = new ArrayDeque<>();
+            int maxInFlight = 2 * pool.getParallelism();
+            List<Path> batch = new ArrayList<>(BATCH);
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+                for (Path p : entries) {
+                    if (isWav(p)) {
+                        batch.add(p);
+                        if (batch.size() == BATCH) {
+                            inFlight.add(new FileBatch(batch, sink, c).fork());
+                            batch = new ArrayList<>(BATCH);
+                            // Listing can outrun parsing: cap how many batches wait in memory
+                            if (inFlight.size() > maxInFlight) inFlight.removeFirst().join();
+                        }
+                    } else if (depth > 1 && Files.isDirectory(p, LinkOption.NOFOLLOW_LINKS)) {
+                        inFlight.add(new DirTask(p, depth - 1, sink, c).fork());
+                    }
+                }
+            } catch (IOException e) {
+                c.failed.incrementAndGet();
+                System.out.println("[Library] cannot scan " + dir + ": " + e);
+            }
+            if (!batch.isEmpty()) new FileBatch(batch, sink, c).compute(); // parse the tail here
+            while (!inFlight.isEmpty()) inFlight.removeFirst().join();
+        }
+    }
+
+    private static final class FileBatch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final Sink sink;
+        private final Counters c;
+
+        FileBatch(List<Path> files, Sink sink, Counters c) {
+            this.files = files;
+            this.sink = sink;
+            this.c = c;
+        }
+
+        @Override
+        protected void compute() {
+            ByteBuffer scratch = SCRATCH.get();
+            for (Path p : files) {
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                } catch (IOException e) {
+                    continue; // vanished since the listing
+                }
+                if (!attrs.isRegularFile()) continue;
+                c.files.incrementAndGet();
+                if (!sink.wants(p, attrs)) continue;
+
+                WavFile.Header h = null;
+                c.headers.incrementAndGet();
+                try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+                    h = WavFile.readHeader(ch, scratch);
+                } catch (IOException | RuntimeException ignored) {
+                }
+                if (h == null) c.unreadable.incrementAndGet();
+                sink.accept(p, attrs, h);
+            }
+        }
+    }
+
+    private static boolean isWav(Path p) {
+        return p.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".wav");
+    }
+}
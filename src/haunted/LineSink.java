@@ -0,0 +1,86 @@
+package haunted;
+
+import javax.sound.sampled.*;
+import java.io.IOException;
+
+/**
+ * Hardware output: one SourceDataLine kept open for the whole session.
+ * write() blocks at device pace, so the sound card is the audio clock.
+ */
+public final class LineSink implements AudioSink {
+
+    private static final boolean FORCE_SOFTWARE_GAIN = Boolean.getBoolean("haunted.audio.softwareGain");
+
+    private final int bufferBytes;
+    private SourceDataLine line;
+
+    /** @param bufferBytes device buffer size; a few mixer periods keeps the device from starving */
+    public LineSink(int bufferBytes) {
+        this.bufferBytes = bufferBytes;
+    }
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        try {
+            DataLine.Info info = new DataLine.Info(SourceDataLine.class, format);
+            SourceDataLine l = (SourceDataLine) AudioSystem.getLine(info);
+            l.open(format, bufferBytes);
+            l.start();
+            line = l;
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            throw new IOException("no output line: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) {
+        line.write(buf, off, len);
+    }
+
+    @Override
+    public boolean isDeviceClocked() {
+        return true;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return true;
+    }
+
+    /**
+     * Try to set MASTER_GAIN in decibels based on our 0..1 volume, using the same
+     * perceptual curve as the software stage (0 dB at full volume).
+     * Returns false if unsupported on this device/line (or software gain is forced).
+     */
+    @Override
+    public boolean setHardwareVolume(float vol) {
+        if (FORCE_SOFTWARE_GAIN || line == null) return false;
+        try {
+            if (line.isControlSupported(FloatControl.Type.MASTER_GAIN)) {
+                FloatControl gain = (FloatControl) line.getControl(FloatControl.Type.MASTER_GAIN);
+                float min = gain.getMinimum(); // usually around -80 dB
+                float max = gain.getMaximum(); // usually around +6 dB
+                float db = GainStage.perceptualDb(vol, min);
+                gain.setValue(Math.min(max, db));
+                return true;
+            }
+        } catch (Exception ignored) {
+            // Some mixers/drivers throw on access; we keep going with software volume.
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        SourceDataLine l = line;
+        line = null;
+        if (l == null) return;
+        try {
+            l.stop();
+            l.flush();
+            l.close();
+        } catch (Exception ignored) {
+            // We want to guarantee teardown even if some device throws
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Arrays;
+
+/**
+ * In-memory sink: captures the rendered PCM (up to a byte cap) for tests and analysis,
+ * or just discards it. With realtime=false the scheduler renders as fast as the CPU
+ * allows, so a whole channel session takes milliseconds instead of minutes.
+ */
+public final class MemorySink implements AudioSink {
+
+    private final boolean realtime;
+    private final int maxBytes;
+
+    private AudioFormat format;
+    private byte[] data = new byte[0];
+    private int size;
+    private long bytesWritten; // including bytes beyond the cap
+
+    /**
+     * @param realtime pace by wall clock (true) or run flat out (false)
+     * @param maxBytes capture at most this many bytes; later audio is counted but dropped
+     */
+    public MemorySink(boolean realtime, int maxBytes) {
+        this.realtime = realtime;
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /** A sink that keeps nothing: the "no device" output. */
+    public static MemorySink discarding(boolean realtime) {
+        return new MemorySink(realtime, 0);
+    }
+
+    @Override
+    public synchronized void open(AudioFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public synchronized void write(byte[] buf, int off, int len) {
+        bytesWritten += len;
+        int keep = Math.min(len, maxBytes - size);
+        if (keep <= 0) return;
+        if (size + keep > data.length) {
+            data = Arrays.copyOf(data, Math.min(maxBytes, Math.max(size + keep, data.length * 2)));
+        }
+        System.arraycopy(buf, off, data, size, keep);
+        size += keep;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return realtime;
+    }
+
+    /** Copy of the captured PCM. */
+    public synchronized byte[] toByteArray() {
+        return Arrays.copyOf(data, size);
+    }
+
+    /** Frames written so far (captured or not). */
+    public synchronized long frames() {
+        return (format == null) ? 0 : bytesWritten / format.getFrameSize();
+    }
+
+    /** Forget captured audio and counters. */
+    public synchronized void reset() {
+        size = 0;
+        bytesWritten = 0;
+    }
+
+    @Override
+    public void close() {}
+}
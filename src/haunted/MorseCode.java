@@ -1,114 +1,138 @@
 package haunted;
 
-import javax.sound.sampled.*;
-import java.io.File;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MorseCode handles encoding strings into Morse code
- * and playing them back as beeps using Java Sound API.
+ * and playing them back as beeps through the shared AudioScheduler.
+ *
+ * Text is compiled by MorseEncoder into a run-length timing array at any WPM (with optional
+ * Farnsworth spacing) and played as a single MorseVoice, which splices cached dot and dash
+ * waveforms (raised-cosine attack/release, so no clicks) into the mix: no per-beep line opens,
+ * and timing is counted in audio frames instead of Thread.sleep. Compiled messages are
+ * memoized, so repeats such as the ghost broadcast text cost nothing, and whole paragraphs
+ * only take the memory of their timing array.
  */
 public class MorseCode {
 
-    // Basic Morse encoding table
-    private static final Map<Character, String> morseMap = new HashMap<>();
-    static {
-        morseMap.put('A', ".-");
-        morseMap.put('B', "-...");
-        morseMap.put('C', "-.-.");
-        morseMap.put('D', "-..");
-        morseMap.put('E', ".");
-        morseMap.put('F', "..-.");
-        morseMap.put('G', "--.");
-        morseMap.put('H', "....");
-        morseMap.put('I', "..");
-        morseMap.put('J', ".---");
-        morseMap.put('K', "-.-");
-        morseMap.put('L', ".-..");
-        morseMap.put('M', "--");
-        morseMap.put('N', "-.");
-        morseMap.put('O', "---");
-        morseMap.put('P', ".--.");
-        morseMap.put('Q', "--.-");
-        morseMap.put('R', ".-.");
-        morseMap.put('S', "...");
-        morseMap.put('T', "-");
-        morseMap.put('U', "..-");
-        morseMap.put('V', "...-");
-        morseMap.put('W', ".--");
-        morseMap.put('X', "-..-");
-        morseMap.put('Y', "-.--");
-        morseMap.put('Z', "--..");
-        morseMap.put('0', "-----");
-        morseMap.put('1', ".----");
-        morseMap.put('2', "..---");
-        morseMap.put('3', "...--");
-        morseMap.put('4', "....-");
-        morseMap.put('5', ".....");
-        morseMap.put('6', "-....");
-        morseMap.put('7', "--...");
-        morseMap.put('8', "---..");
-        morseMap.put('9', "----.");
+    /** Default speed: slow and eerie, close to the original hand-tuned beeps. */
+    public static final int DEFAULT_WPM = 6;
+
+    /** Beep frequency; MorseDecoder listens here. */
+    public static final int TONE_HZ = 800;
+    private static final int RAMP_MS = 5;           // raised-cosine attack and release
+    private static final float AMPLITUDE = 0.6f;
+    private static final int RATE = (int) AudioMixer.FORMAT.getSampleRate();
+
+    private static final int MAX_MEMOIZED = 16;
+    private static final int MAX_MEMOIZED_CHARS = 4096; // paragraphs are compiled, not kept
+    private static final Map<String, MorseEncoder.Runs> compiled =
+            new LinkedHashMap<String, MorseEncoder.Runs>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, MorseEncoder.Runs> eldest) {
+                    return size() > MAX_MEMOIZED;
+                }
+            };
+
+    // Tone waveforms by length in frames: one dot and one dash per speed in use
+    private static final Map<Integer, float[]> tones = new ConcurrentHashMap<>();
+
+    private static AudioScheduler standalone; // only for playMessage(String)
+
+    /**
+     * Mix a full message in Morse code on top of whatever {@code scheduler} is playing,
+     * at the default speed. Returns immediately; the voice can be awaited or stopped, and
+     * the next program change removes it like any overlay.
+     */
+    public static AudioMixer.Voice playMessage(String msg, AudioScheduler scheduler) {
+        return playMessage(msg, scheduler, DEFAULT_WPM, DEFAULT_WPM);
     }
 
     /**
-     * Play a full message in Morse code.
-     * Each character is encoded into dots/dashes and played as tones.
+     * As {@link #playMessage(String, AudioScheduler)} at {@code wpm} character speed, with
+     * gaps stretched to an overall {@code farnsworthWpm} (pass the same value for standard spacing).
      */
-    public static void playMessage(String msg) {
-        for (char c : msg.toUpperCase().toCharArray()) {
-            if (c == ' ') {
-                sleep(700); // Space between words
-                continue;
-            }
-            String code = morseMap.get(c);
-            if (code != null) {
-                playCode(code);
-                sleep(300); // Gap between letters
-            }
-        }
+    public static AudioMixer.Voice playMessage(String msg, AudioScheduler scheduler, int wpm, int farnsworthWpm) {
+        MorseEncoder.Runs runs = compile(msg, wpm, farnsworthWpm);
+        AudioMixer.Voice voice = new MorseVoice(runs, tone(runs.dotFrames), tone(runs.dashFrames), 1f);
+        scheduler.playOverlay(voice);
+        return voice;
     }
 
-    /** Convert Morse sequence (like "...") into audio beeps. */
-    private static void playCode(String code) {
-        for (char symbol : code.toCharArray()) {
-            if (symbol == '.') {
-                beep(200); // Dot
-            } else if (symbol == '-') {
-                beep(600); // Dash
-            }
-            sleep(150); // Gap between parts of a letter
-        }
+    /**
+     * Asynchronous form of {@link #playMessage(String, AudioScheduler)}: the future completes
+     * when the last beep has been mixed (counted in audio frames, not wall-clock sleeps),
+     * and is cancelled as soon as the radio is powered off or retuned. Cancelling it silences
+     * the message within one mixer buffer.
+     */
+    public static CompletableFuture<Void> playMessageAsync(String msg, AudioScheduler scheduler) {
+        return playMessage(msg, scheduler).completion();
     }
 
-    /** Generate a simple sine wave beep of given duration (ms). */
-    private static void beep(int durationMs) {
+    /** {@link #playMessageAsync(String, AudioScheduler)} at a given speed. */
+    public static CompletableFuture<Void> playMessageAsync(String msg, AudioScheduler scheduler,
+                                                           int wpm, int farnsworthWpm) {
+        return playMessage(msg, scheduler, wpm, farnsworthWpm).completion();
+    }
+
+    /**
+     * Play a full message in Morse code on a scheduler of its own and wait until it ends.
+     * Prefer {@link #playMessage(String, AudioScheduler)} inside the app, which shares the line.
+     */
+    public static void playMessage(String msg) {
+        AudioScheduler s;
+        synchronized (MorseCode.class) {
+            if (standalone == null) standalone = new AudioScheduler();
+            s = standalone;
+        }
+        AudioMixer.Voice voice = playMessage(msg, s);
         try {
-            float sampleRate = 44100;
-            byte[] buf = new byte[(int) (durationMs * sampleRate / 1000)];
-            for (int i = 0; i < buf.length; i++) {
-                double angle = i / (sampleRate / 800.0); // tone at ~800Hz
-                buf[i] = (byte) (Math.sin(angle) * 127);
-            }
+            voice.awaitFinished();
+        } catch (InterruptedException e) {
+            voice.stop();
+            Thread.currentThread().interrupt();
+        }
+    }
 
-            AudioFormat af = new AudioFormat(sampleRate, 8, 1, true, false);
-            try (SourceDataLine sdl = AudioSystem.getSourceDataLine(af)) {
-                sdl.open(af);
-                sdl.start();
-                sdl.write(buf, 0, buf.length);
-                sdl.drain();
-                sdl.stop();
+    /** Timing array for {@code msg} at the mixer rate; short messages are memoized. */
+    static MorseEncoder.Runs compile(String msg, int wpm, int farnsworthWpm) {
+        if (msg.length() > MAX_MEMOIZED_CHARS) {
+            return new MorseEncoder(wpm, farnsworthWpm, RATE).encode(msg);
+        }
+        String key = wpm + "/" + farnsworthWpm + "/" + msg;
+        MorseEncoder.Runs runs;
+        synchronized (compiled) {
+            runs = compiled.get(key);
+        }
+        if (runs == null) {
+            runs = new MorseEncoder(wpm, farnsworthWpm, RATE).encode(msg);
+            synchronized (compiled) {
+                compiled.put(key, runs);
             }
-        } catch (Exception e) {
-            e.printStackTrace();
         }
+        return runs;
     }
 
-    /** Helper sleep without checked exceptions. */
-    private static void sleep(int ms) {
-        try {
-            Thread.sleep(ms);
-        } catch (InterruptedException ignored) {}
+    /** The 800 Hz beep, {@code frames} long, with raised-cosine edges (cached per length). */
+    static float[] tone(int frames) {
+        return tones.computeIfAbsent(frames, MorseCode::synthesize);
+    }
+
+    // ---------- Internals ----------
+
+    private static float[] synthesize(int n) {
+        int ramp = Math.min(n / 2, RATE * RAMP_MS / 1000);
+        float[] buf = new float[n];
+        double w = 2 * Math.PI * TONE_HZ / RATE;
+        for (int i = 0; i < n; i++) {
+            double env = 1.0;
+            if (i < ramp) env = 0.5 - 0.5 * Math.cos(Math.PI * i / ramp);
+            else if (i >= n - ramp) env = 0.5 - 0.5 * Math.cos(Math.PI * (n - 1 - i) / ramp);
+            buf[i] = (float) (Math.sin(w * i) * env * AMPLITUDE);
+        }
+        return buf;
     }
 }
@@ -0,0 +1,232 @@
+package haunted;
+
+/**
+ * MorseDecoder
+ *  - Listens to the mix (as an AudioMixer.Tap on the audio thread) and decodes CW tones
+ *    back into text, so the radio can "hear" the Morse hidden in a broadcast.
+ *  - Tone detection: a Goertzel filter at the tone frequency over 5 ms blocks. A block counts
+ *    as "key down" when the tone holds most of the block's energy and its level clears an
+ *    adaptive threshold halfway between the tracked noise floor and signal peak.
+ *  - Timing: a running dot estimate (seeded from a WPM hint, re-learned from every mark) and
+ *    letter-gap estimate (so Farnsworth spacing is followed too). Marks and gaps of a letter
+ *    are kept until the letter ends and only then classified, with the freshest estimates,
+ *    so a speed change is corrected even for the letter in which it was noticed.
+ *  - Constant memory and no allocation per buffer; decoded characters go to a listener
+ *    (called on the audio thread — hop to the EDT before touching Swing).
+ *  - Detector state belongs to the audio thread alone: reset() from any other thread only
+ *    raises a flag that the next onMix acts on. Only the decoded text is shared, under a lock.
+ */
+public final class MorseDecoder implements AudioMixer.Tap {
+
+    /** Receives each decoded character; ' ' marks a word gap. Called on the audio thread. */
+    public interface Listener { void onDecoded(char c); }
+
+    private static final float MIN_LEVEL = 0.003f;     // ~-50 dBFS: quieter is never a tone
+    private static final float TONE_SHARE = 0.4f;      // tone energy / block energy to count as a mark
+    private static final int HISTORY = 64;             // characters kept for recentText()
+    private static final int MAX_MARKS = 16;           // marks buffered per letter
+
+    private final int block;                           // samples per Goertzel block
+    private final float coeff;
+    private final Listener listener;
+
+    // Goertzel state for the current block
+    private float q1, q2, energy;
+    private int filled;
+
+    // Adaptive level tracking (tone magnitude per block)
+    private float noise = MIN_LEVEL, peak = MIN_LEVEL * 4;
+
+    // Key state and timing, in blocks
+    private boolean keyDown;
+    private int pendingFlips;                          // blocks disagreeing with keyDown (debounce)
+    private int runBlocks;
+    private float dotBlocks;
+    private float letterGapBlocks;
+    private final int[] marks = new int[MAX_MARKS];    // mark lengths of the letter being received
+    private final int[] gaps = new int[MAX_MARKS];     // gap after each mark
+    private int markCount;
+    private boolean letterSent = true, wordSent = true;
+    private volatile boolean resetRequested;
+
+    private final char[] history = new char[HISTORY];
+    private int historyLen;
+
+    /**
+     * @param toneHz  tone frequency to listen for (MorseCode sends 800 Hz)
+     * @param wpmHint expected speed, only used until the first marks have been measured
+     */
+    public MorseDecoder(int toneHz, int wpmHint, Listener listener) {
+        int rate = (int) AudioMixer.FORMAT.getSampleRate();
+        this.block = rate / 200; // 5 ms
+        double k = Math.round((double) block * toneHz / rate);
+        this.coeff = (float) (2 * Math.cos(2 * Math.PI * k / block));
+        this.listener = listener;
+        this.dotBlocks = Math.max(1f, 1200f / Math.max(1, wpmHint) / 5f);
+        this.letterGapBlocks = 3 * dotBlocks;
+    }
+
+    @Override
+    public void onMix(float[] mix, int frames, int channels) {
+        if (resetRequested) {
+            resetRequested = false;
+            clearSymbols();
+        }
+        final float c = coeff;
+        float a = q1, b = q2, e = energy;
+        int n = filled;
+        for (int i = 0, p = 0; i < frames; i++, p += channels) {
+            float x = (channels == 2) ? (mix[p] + mix[p + 1]) * 0.5f : mix[p];
+            float q0 = c * a - b + x;
+            b = a;
+            a = q0;
+            e += x * x;
+            if (++n == block) {
+                float power = a * a + b * b - c * a * b;
+                endBlock(power, e);
+                a = b = e = 0f;
+                n = 0;
+            }
+        }
+        q1 = a;
+        q2 = b;
+        energy = e;
+        filled = n;
+    }
+
+    /** Decoded text so far (last 64 characters). */
+    public synchronized String recentText() {
+        return new String(history, 0, historyLen);
+    }
+
+    /**
+     * Forget the decoded text now, and timing and partial symbols from the next buffer on
+     * (e.g. after a retune); the speed estimate is kept. Any thread.
+     */
+    public void reset() {
+        synchronized (this) {
+            historyLen = 0;
+        }
+        resetRequested = true; // the audio thread clears its own state
+    }
+
+    // ---------- Internals ----------
+
+    /** Drop the key state and the letter being received (audio thread). */
+    private void clearSymbols() {
+        keyDown = false;
+        pendingFlips = runBlocks = markCount = 0;
+        letterSent = wordSent = true;
+    }
+
+    private void endBlock(float power, float blockEnergy) {
+        // Tone amplitude in this block, and how much of the block's energy the tone holds
+        float level = (float) Math.sqrt(Math.max(0f, power)) * 2f / block;
+        float share = (blockEnergy > 0f) ? 2f * power / (block * blockEnergy) : 0f;
+
+        // Floor rises slowly and falls fast; peak the other way round
+        noise += (level < noise) ? (level - noise) * 0.5f : (level - noise) * 0.002f;
+        peak += (level > peak) ? (level - peak) * 0.5f : (level - peak) * 0.002f;
+        float threshold = Math.max(MIN_LEVEL, noise + (peak - noise) * 0.5f);
+
+        boolean tone = level > threshold && share > TONE_SHARE;
+        if (tone != keyDown) {
+            // Require two agreeing blocks (10 ms) before flipping, so clicks and dropouts don't split marks
+            if (++pendingFlips < 2) {
+                runBlocks++;
+                gapCheck();
+                return;
+            }
+            int run = runBlocks - (pendingFlips - 1);
+            if (keyDown) endMark(run);
+            else endGap(run);
+            keyDown = tone;
+            runBlocks = pendingFlips;
+            pendingFlips = 0;
+        } else {
+            pendingFlips = 0;
+            runBlocks++;
+        }
+        gapCheck();
+    }
+
+    private void endMark(int run) {
+        if (run > 2f * dotBlocks) {
+            dotBlocks += (run / 3f - dotBlocks) * 0.3f;       // a dash
+        } else if (run * 2f < dotBlocks) {
+            letterGapBlocks *= run / dotBlocks;               // far shorter than any dot: the sender sped up
+            dotBlocks = run;
+        } else {
+            dotBlocks += (run - dotBlocks) * 0.3f;
+        }
+        dotBlocks = Math.max(1f, dotBlocks);
+        if (markCount < MAX_MARKS) {
+            marks[markCount] = run;
+            gaps[markCount] = 0;
+            markCount++;
+        }
+        letterSent = wordSent = false;
+    }
+
+    private void endGap(int run) {
+        if (markCount > 0 && !letterSent) gaps[markCount - 1] = run;
+        if (run <= 2f * dotBlocks) return;
+        // Learn the letter gap; a word gap is ~7/3 of it
+        float asLetter = (run < wordThreshold()) ? run : run * 3f / 7f;
+        letterGapBlocks += (asLetter - letterGapBlocks) * 0.3f;
+    }
+
+    private float wordThreshold() {
+        return Math.max(5f * dotBlocks, 1.6f * letterGapBlocks);
+    }
+
+    /** While the key is up, close the letter after 2 dots of silence and the word after a word gap. */
+    private void gapCheck() {
+        if (keyDown) return;
+        if (!letterSent && runBlocks > 2f * dotBlocks) {
+            letterSent = true;
+            flushLetter();
+        }
+        if (letterSent && !wordSent && runBlocks > wordThreshold()) {
+            wordSent = true;
+            emit(' ');
+        }
+    }
+
+    /** Classify the buffered marks with the current estimates; split where a gap was really a letter gap. */
+    private void flushLetter() {
+        int elements = 0, bits = 0;
+        for (int i = 0; i < markCount; i++) {
+            if (marks[i] > 2f * dotBlocks && elements < 7) bits |= 1 << elements;
+            elements++;
+            if (i < markCount - 1 && gaps[i] > 2f * dotBlocks) {
+                emitCode(elements, bits);
+                elements = bits = 0;
+            }
+        }
+        emitCode(elements, bits);
+        markCount = 0;
+    }
+
+    private void emitCode(int elements, int bits) {
+        char ch = MorseEncoder.decode(elements, bits);
+        if (ch != 0) emit(ch);
+    }
+
+    private void emit(char ch) {
+        synchronized (this) {
+            if (historyLen == HISTORY) {
+                System.arraycopy(history, 1, history, 0, HISTORY - 1);
+                historyLen--;
+            }
+            history[historyLen++] = ch;
+        }
+        if (listener != null) {
+            try {
+                listener.onDecoded(ch);
+            } catch (RuntimeException ignored) {
+                // A failing listener must not take the audio thread down
+            }
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package haunted;
+
+/**
+ * MorseEncoder
+ *  - Compiles text straight into a run-length timing array: alternating tone and silence
+ *    durations in audio frames, starting with a tone (which may be 0 frames long).
+ *  - Letters, digits, punctuation and prosigns. A prosign is written in angle brackets,
+ *    e.g. {@code <AR>} or {@code <SOS>}, and is sent as one character with no letter gaps.
+ *  - Speed in words per minute (PARIS standard), with optional Farnsworth spacing: the
+ *    characters keep their speed while letter and word gaps stretch to the slower overall rate.
+ *  - Lookup is a primitive table indexed by char (no boxing, no strings per character),
+ *    so long paragraphs encode at many megabytes per second.
+ *
+ * Characters without a Morse code are skipped.
+ */
+final class MorseEncoder {
+
+    /**
+     * Encoded message. {@code runs[0..count)} alternates tone (even index) and silence
+     * (odd index) lengths in frames; every tone is exactly {@link #dotFrames} or
+     * {@link #dashFrames} long.
+     */
+    static final class Runs {
+        final int[] runs;
+        final int count;
+        final int dotFrames;
+        final int dashFrames;
+        final long totalFrames;
+
+        Runs(int[] runs, int count, int dotFrames, int dashFrames, long totalFrames) {
+            this.runs = runs;
+            this.count = count;
+            this.dotFrames = dotFrames;
+            this.dashFrames = dashFrames;
+            this.totalFrames = totalFrames;
+        }
+    }
+
+    // Code per char: element count in bits 8.., elements in bits 0..7 (first element in bit 0, 1 = dash)
+    private static final int[] TABLE = new int[128];
+    // Reverse of TABLE, indexed by the same code (upper-case only)
+    private static final char[] DECODE = new char[8 << 8];
+    static {
+        String[] codes = {
+                "A.-", "B-...", "C-.-.", "D-..", "E.", "F..-.", "G--.", "H....", "I..", "J.---",
+                "K-.-", "L.-..", "M--", "N-.", "O---", "P.--.", "Q--.-", "R.-.", "S...", "T-",
+                "U..-", "V...-", "W.--", "X-..-", "Y-.--", "Z--..",
+                "0-----", "1.----", "2..---", "3...--", "4....-", "5.....", "6-....", "7--...",
+                "8---..", "9----.",
+                "..-.-.-", ",--..--", "?..--..", "'.----.", "!-.-.--", "/-..-.", "(-.--.",
+                ")-.--.-", "&.-...", ":---...", ";-.-.-.", "=-...-", "+.-.-.", "--....-",
+                "_..--.-", "\".-..-.", "$...-..-", "@.--.-."
+        };
+        for (String c : codes) {
+            int bits = 0;
+            int len = c.length() - 1;
+            for (int i = 0; i < len; i++) {
+                if (c.charAt(i + 1) == '-') bits |= 1 << i;
+            }
+            int v = (len << 8) | bits;
+            char ch = c.charAt(0);
+            TABLE[ch] = v;
+            DECODE[v] = ch;
+            if (ch >= 'A' && ch <= 'Z') TABLE[ch - 'A' + 'a'] = v;
+        }
+    }
+
+    private final int dot;         // frames
+    private final int dash;
+    private final int elementGap;
+    private final int letterExtra; // added after the last element gap of a character
+    private final int wordExtra;   // added for a space, on top of the letter gap
+
+    /**
+     * @param wpm           character speed in words per minute
+     * @param farnsworthWpm overall speed; below {@code wpm} it stretches only the gaps
+     * @param sampleRate    frames per second of the timing array
+     */
+    MorseEncoder(int wpm, int farnsworthWpm, int sampleRate) {
+        wpm = Math.max(1, wpm);
+        farnsworthWpm = Math.max(1, Math.min(wpm, farnsworthWpm));
+        double unit = sampleRate * 1.2 / wpm;   // 1200 ms / wpm
+        double letterGap = 3 * unit;
+        double wordGap = 7 * unit;
+        if (farnsworthWpm < wpm) {
+            // ARRL: the 19 gap units of PARIS take ta seconds at the effective speed
+            double ta = (60.0 * wpm - 37.2 * farnsworthWpm) / ((double) farnsworthWpm * wpm);
+            letterGap = 3 * ta / 19 * sampleRate;
+            wordGap = 7 * ta / 19 * sampleRate;
+        }
+        this.dot = (int) Math.round(unit);
+        this.dash = 3 * dot;
+        this.elementGap = dot;
+        this.letterExtra = (int) Math.round(letterGap) - elementGap;
+        this.wordExtra = (int) Math.round(wordGap - letterGap);
+    }
+
+    /** True if {@code c} has a Morse code (case-insensitive). */
+    static boolean canEncode(char c) {
+        return c < 128 && TABLE[c] != 0;
+    }
+
+    /**
+     * Character for {@code elements} dots/dashes packed like the table (first element in bit 0,
+     * 1 = dash), or 0 if that sequence is not a known code.
+     */
+    static char decode(int elements, int bits) {
+        if (elements <= 0 || elements > 7) return 0;
+        return DECODE[(elements << 8) | (bits & 0xFF)];
+    }
+
+    /** Encode {@code text}; unknown characters are skipped, an unclosed prosign runs to the end. */
+    Runs encode(CharSequence text) {
+        int[] runs = new int[16 + text.length() * 6]; // ~6 runs per character on average
+        int n = 0;          // always even between characters: the last entry is a silence
+        long total = 0;
+        boolean inProsign = false;
+
+        for (int i = 0, len = text.length(); i < len; i++) {
+            char c = text.charAt(i);
+            int gap;
+            if (c == ' ') {
+                gap = wordExtra;
+            } else if (c == '<') {
+                inProsign = true;
+                continue;
+            } else if (c == '>') {
+                if (!inProsign) continue;
+                inProsign = false;
+                gap = letterExtra;
+            } else {
+                int code = (c < 128) ? TABLE[c] : 0;
+                if (code == 0) continue;
+                int elements = code >>> 8;
+                if (n + 2 * elements > runs.length) runs = grow(runs, n + 2 * elements);
+                for (int e = 0; e < elements; e++) {
+                    int tone = (((code >>> e) & 1) != 0) ? dash : dot;
+                    runs[n++] = tone;
+                    runs[n++] = elementGap;
+                    total += tone + elementGap;
+                }
+                gap = inProsign ? 0 : letterExtra; // prosign letters run together
+            }
+
+            // Extend the trailing silence (or open one with an empty tone at the very start)
+            if (n == 0) {
+                runs[n++] = 0;
+                runs[n++] = 0;
+            }
+            runs[n - 1] += gap;
+            total += gap;
+        }
+        return new Runs(runs, n, dot, dash, total);
+    }
+
+    private static int[] grow(int[] a, int min) {
+        int[] b = new int[Math.max(min, a.length * 2)];
+        System.arraycopy(a, 0, b, 0, a.length);
+        return b;
+    }
+}
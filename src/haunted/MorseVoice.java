@@ -0,0 +1,66 @@
+package haunted;
+
+/**
+ * Mixer voice that plays a {@link MorseEncoder.Runs} timing array: tones are copied from two
+ * pre-rendered waveforms (dot and dash, raised-cosine edges), silences cost nothing.
+ * Nothing is rendered ahead, so a paragraph takes no more memory than its timing array.
+ */
+final class MorseVoice extends AudioMixer.Voice {
+
+    private final MorseEncoder.Runs runs;
+    private final float[] dot;
+    private final float[] dash;
+
+    private int run;          // index into runs.runs
+    private int offset;       // frames already played of the current run
+
+    /** @param dot and dash waveforms of exactly runs.dotFrames / runs.dashFrames samples */
+    MorseVoice(MorseEncoder.Runs runs, float[] dot, float[] dash, float gain) {
+        super(gain);
+        this.runs = runs;
+        this.dot = dot;
+        this.dash = dash;
+    }
+
+    @Override
+    protected int mix(float[] mix, int frames, float gain) {
+        final int[] r = runs.runs;
+        int done = 0;
+        while (done < frames && run < runs.count) {
+            int len = r[run];
+            int n = Math.min(frames - done, len - offset);
+            if ((run & 1) == 0 && n > 0) {
+                float[] wave = (len == runs.dashFrames) ? dash : dot;
+                for (int i = 0, o = done * AudioMixer.CHANNELS, w = offset; i < n; i++, o += 2, w++) {
+                    float s = wave[w] * gain;
+                    mix[o] += s;
+                    mix[o + 1] += s;
+                }
+            }
+            done += n;
+            offset += n;
+            if (offset >= len) {
+                run++;
+                offset = 0;
+            }
+        }
+        return done;
+    }
+
+    @Override
+    protected boolean seek(long frame) {
+        final int[] r = runs.runs;
+        long at = 0;
+        for (int i = 0; i < runs.count; i++) {
+            if (at + r[i] > frame) {
+                run = i;
+                offset = (int) (frame - at);
+                return true;
+            }
+            at += r[i];
+        }
+        run = runs.count;
+        offset = 0;
+        return true;
+    }
+}
@@ -0,0 +1,213 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PcmCache
+ *  - Keeps fully decoded PCM (signed 16-bit, little-endian) for short clips in memory,
+ *    so replaying e.g. a sound effect skips file I/O and Java Sound decoding entirely.
+ *  - Entries are keyed by path + last-modified time; editing a file simply causes a miss.
+ *  - Bounded by a byte budget, evicting the least-recently-played clip first.
+ *  - Buffers live on the heap or, optionally, off-heap in direct ByteBuffers.
+ *
+ * Only clips up to a quarter of the budget are cached, so one long episode can never
+ * flush all the short effects out. Larger files are reported as bypasses and the
+ * caller streams them as before.
+ */
+public final class PcmCache {
+
+    /** A decoded clip. The buffer is shared; use {@link #view()} to read it. */
+    public static final class Clip {
+        private final AudioFormat format;
+        private final ByteBuffer data;
+        private final long frames;
+
+        private Clip(AudioFormat format, ByteBuffer data) {
+            this.format = format;
+            this.data = data.asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+            this.frames = data.capacity() / format.getFrameSize();
+        }
+
+        public AudioFormat format() { return format; }
+        public long frames()        { return frames; }
+        public int bytes()          { return data.capacity(); }
+
+        /** Independent read-only view positioned at frame 0. */
+        public ByteBuffer view() {
+            return data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /** Cache key: a file is only considered the same clip while its mtime is unchanged. */
+    private static final class Key {
+        final Path path;
+        final long mtime;
+
+        Key(Path path, long mtime) { this.path = path; this.mtime = mtime; }
+
+        @Override public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return mtime == k.mtime && path.equals(k.path);
+        }
+        @Override public int hashCode() { return Objects.hash(path, mtime); }
+    }
+
+    private final long budgetBytes;
+    private final long maxEntryBytes;
+    private final boolean direct;
+
+    // Access-ordered map: iteration starts at the least recently used entry.
+    private final LinkedHashMap<Key, Clip> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong bypasses = new AtomicLong();
+
+    /**
+     * @param budgetBytes total decoded bytes kept in memory (0 disables caching)
+     * @param direct      allocate clip buffers off-heap instead of as byte[]
+     */
+    public PcmCache(long budgetBytes, boolean direct) {
+        this.budgetBytes = Math.max(0, budgetBytes);
+        this.maxEntryBytes = Math.min(Integer.MAX_VALUE, this.budgetBytes / 4);
+        this.direct = direct;
+    }
+
+    /**
+     * Cache configured from system properties:
+     *   haunted.pcmCache.bytes   budget in bytes (default 32 MiB, 0 disables)
+     *   haunted.pcmCache.direct  "true" for off-heap buffers
+     */
+    public static PcmCache fromSystemProperties() {
+        long budget = Long.getLong("haunted.pcmCache.bytes", 32L << 20);
+        boolean direct = Boolean.getBoolean("haunted.pcmCache.direct");
+        return new PcmCache(budget, direct);
+    }
+
+    /**
+     * Returns the decoded clip for {@code wav}, decoding and caching it on a miss.
+     * Returns null when the file is too large to cache, missing, or not decodable;
+     * the caller should stream it instead.
+     */
+    public Clip get(Path wav) {
+        if (budgetBytes == 0) return null;
+
+        Key key;
+        long fileSize;
+        try {
+            key = new Key(wav.toAbsolutePath().normalize(), Files.getLastModifiedTime(wav).toMillis());
+            fileSize = Files.size(wav);
+        } catch (IOException e) {
+            return null;
+        }
+
+        synchronized (this) {
+            Clip hit = entries.get(key);
+            if (hit != null) {
+                hits.incrementAndGet();
+                return hit;
+            }
+        }
+
+        // PCM WAVs decode to roughly their file size, so skip obvious giants without opening them
+        if (fileSize > maxEntryBytes) {
+            bypasses.incrementAndGet();
+            return null;
+        }
+
+        misses.incrementAndGet();
+        Clip clip = decode(wav);
+        if (clip == null) return null;
+
+        synchronized (this) {
+            // Another thread may have decoded the same clip meanwhile; keep the first one
+            Clip raced = entries.get(key);
+            if (raced != null) return raced;
+
+            entries.put(key, clip);
+            usedBytes += clip.bytes();
+            evictToBudget();
+        }
+        return clip;
+    }
+
+    /** Drops every entry (counters are kept). */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+    }
+
+    // ---------- Stats ----------
+
+    public long hits()        { return hits.get(); }
+    public long misses()      { return misses.get(); }
+    public long evictions()   { return evictions.get(); }
+    /** Lookups skipped because the file was larger than the per-entry limit. */
+    public long bypasses()    { return bypasses.get(); }
+    public long budgetBytes() { return budgetBytes; }
+    public synchronized long usedBytes() { return usedBytes; }
+    public synchronized int size()       { return entries.size(); }
+
+    @Override
+    public String toString() {
+        return "PcmCache[hits=" + hits() + ", misses=" + misses() + ", evictions=" + evictions()
+                + ", bypasses=" + bypasses() + ", used=" + usedBytes() + "/" + budgetBytes
+                + " bytes, entries=" + size() + (direct ? ", direct" : "") + "]";
+    }
+
+    // ---------- Internals ----------
+
+    /** Caller holds the lock. Evicts least-recently-used clips until we fit the budget. */
+    private void evictToBudget() {
+        Iterator<Map.Entry<Key, Clip>> it = entries.entrySet().iterator();
+        while (usedBytes > budgetBytes && it.hasNext()) {
+            Clip victim = it.next().getValue();
+            it.remove();
+            usedBytes -= victim.bytes();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /** Decode the whole file to 16-bit PCM, or null if it is unsupported or too long. */
+    private Clip decode(Path wav) {
+        try (AudioInputStream in = AudioPlayer.audioStream(wav)) {
+            AudioFormat decoded = AudioPlayer.toPcm16(in.getFormat());
+            try (AudioInputStream din = AudioSystem.getAudioInputStream(decoded, in)) {
+                long frames = din.getFrameLength();
+                if (frames == AudioSystem.NOT_SPECIFIED) return null;
+                long bytes = frames * decoded.getFrameSize();
+                if (bytes <= 0 || bytes > maxEntryBytes) {
+                    bypasses.incrementAndGet();
+                    return null;
+                }
+
+                ByteBuffer buf = direct ? ByteBuffer.allocateDirect((int) bytes) : ByteBuffer.allocate((int) bytes);
+                byte[] chunk = new byte[8192];
+                while (buf.hasRemaining()) {
+                    int n = din.read(chunk, 0, Math.min(chunk.length, buf.remaining()));
+                    if (n <= 0) break; // header overstated the length
+                    buf.put(chunk, 0, n);
+                }
+                buf.flip();
+                return new Clip(decoded, buf.slice());
+            }
+        } catch (Exception e) {
+            return null;
+        }
+    }
+}
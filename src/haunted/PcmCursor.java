@@ -0,0 +1,63 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read position over a {@link PcmSource} that outlives individual voices.
+ * Segmented playback plays several voices from one cursor, so each segment
+ * continues from the exact frame where the previous one stopped instead of
+ * reopening the file at frame 0.
+ */
+final class PcmCursor implements PcmSource {
+    private final PcmSource source;
+    private long position;       // frames handed out so far
+    private volatile boolean atEnd;
+
+    PcmCursor(PcmSource source) {
+        this.source = source;
+    }
+
+    /** Frame index the next read starts at. */
+    long position()   { return position; }
+
+    /** True once the underlying source has run out. */
+    boolean isAtEnd() { return atEnd; }
+
+    @Override
+    public int channels() {
+        return source.channels();
+    }
+
+    @Override
+    public ByteBuffer next(int maxFrames) throws IOException {
+        if (atEnd) return null;
+        ByteBuffer pcm = source.next(maxFrames);
+        if (pcm == null) {
+            atEnd = true;
+            return null;
+        }
+        position += pcm.remaining() / (2 * source.channels());
+        return pcm;
+    }
+
+    @Override
+    public long frameLength() {
+        return source.frameLength();
+    }
+
+    /** Jump to {@code frame}; the skipped audio is never read or decoded. */
+    @Override
+    public boolean seek(long frame) {
+        if (!source.seek(frame)) return false;
+        long len = source.frameLength();
+        position = (len >= 0) ? Math.max(0, Math.min(frame, len)) : Math.max(0, frame);
+        atEnd = false;
+        return true;
+    }
+
+    @Override
+    public void close() {
+        source.close();
+    }
+}
@@ -0,0 +1,105 @@
+package haunted;
+
+import javax.sound.sampled.AudioInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A supply of signed 16-bit little-endian PCM. Sources handed to the mixer are at the mixer's
+ * sample rate, mono or stereo; file-level sources may be in their native rate and layout and
+ * are brought to the mixer format by {@link ResamplingSource#toMixerFormat}.
+ * Sources hand out ByteBuffer windows so in-memory data can be mixed without copying.
+ */
+interface PcmSource extends Closeable {
+
+    /** 1 (mono, duplicated to both sides), 2 (interleaved stereo), or more before conversion. */
+    int channels();
+
+    /**
+     * Returns a little-endian window of up to {@code maxFrames} frames between position and limit,
+     * or null at end of stream. The window is only valid until the next call.
+     */
+    ByteBuffer next(int maxFrames) throws IOException;
+
+    /** Total frames, or -1 if the source doesn't know (e.g. a converting stream). */
+    default long frameLength() {
+        return -1;
+    }
+
+    /** Move to {@code frame} without reading what lies before it; false if not seekable. */
+    default boolean seek(long frame) {
+        return false;
+    }
+
+    @Override
+    void close();
+
+    /** Reads straight out of a decoded {@link PcmCache.Clip}: windows are slices, no copy. */
+    static PcmSource of(PcmCache.Clip clip) {
+        return of(clip.view(), clip.format().getChannels());
+    }
+
+    /** Reads 16-bit little-endian PCM held in memory (position 0 to capacity) without copying. */
+    static PcmSource of(ByteBuffer pcm, int channels) {
+        final ByteBuffer window = pcm.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        final int frameSize = channels * 2;
+        final long frames = window.capacity() / frameSize;
+        return new PcmSource() {
+            private int pos;
+
+            @Override public int channels() { return channels; }
+
+            @Override public long frameLength() { return frames; }
+
+            @Override public ByteBuffer next(int maxFrames) {
+                int bytes = Math.min(window.capacity() - pos, maxFrames * frameSize);
+                if (bytes <= 0) return null;
+                window.limit(pos + bytes).position(pos);
+                pos += bytes;
+                return window;
+            }
+
+            @Override public boolean seek(long frame) {
+                pos = (int) (Math.max(0, Math.min(frame, frames)) * frameSize);
+                return true;
+            }
+
+            @Override public void close() {}
+        };
+    }
+
+    /** Reads a Java Sound stream (already converted to 16-bit little-endian) through one scratch buffer. */
+    static PcmSource of(AudioInputStream pcm) {
+        final int channels = pcm.getFormat().getChannels();
+        final int frameSize = pcm.getFormat().getFrameSize();
+        final byte[] scratch = new byte[AudioMixer.BUFFER_FRAMES * frameSize];
+        final ByteBuffer window = ByteBuffer.wrap(scratch).order(ByteOrder.LITTLE_ENDIAN);
+        return new PcmSource() {
+            @Override public int channels() { return channels; }
+
+            @Override public ByteBuffer next(int maxFrames) throws IOException {
+                int want = Math.min(scratch.length, maxFrames * frameSize);
+                int got = 0;
+                // Fill whole frames; AudioInputStream may return short reads
+                while (got < want) {
+                    int n = pcm.read(scratch, got, want - got);
+                    if (n <= 0) break;
+                    got += n;
+                }
+                got -= got % frameSize;
+                if (got <= 0) return null;
+                window.clear().limit(got);
+                return window;
+            }
+
+            @Override public void close() {
+                try {
+                    pcm.close();
+                } catch (IOException ignored) {
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,88 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Mixer voice that plays a {@link PcmSource} until it runs out, a frame budget is used up,
+ * or it is stopped. Mono sources are spread to both channels.
+ *
+ * A voice that does not own its source (a {@link PcmCursor} shared by several segments)
+ * leaves it open on release, so the next segment continues from the same frame.
+ */
+final class PcmVoice extends AudioMixer.Voice {
+    private static final float SCALE = 1f / 32768f;
+
+    private final PcmSource source;
+    private final boolean ownsSource;
+    private long framesLeft;
+
+    /** Plays the whole source and closes it afterwards. */
+    PcmVoice(PcmSource source, float gain) {
+        this(source, gain, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * @param maxFrames  frames to play before the voice ends on its own
+     * @param ownsSource close the source when the voice leaves the mix
+     */
+    PcmVoice(PcmSource source, float gain, long maxFrames, boolean ownsSource) {
+        super(gain);
+        this.source = source;
+        this.framesLeft = maxFrames;
+        this.ownsSource = ownsSource;
+    }
+
+    @Override
+    protected int mix(float[] mix, int frames, float gain) {
+        int done = mixFrom(source, mix, 0, (int) Math.min(frames, framesLeft), gain);
+        framesLeft -= done;
+        return done;
+    }
+
+    @Override
+    protected boolean seek(long frame) {
+        return source.seek(frame);
+    }
+
+    @Override
+    protected void release() {
+        if (ownsSource) source.close();
+    }
+
+    /**
+     * Add up to {@code frames} frames from {@code source} into {@code mix}, starting at frame
+     * {@code offset} of the mix buffer. Returns the frames produced (fewer at end of source).
+     * Shared by every voice that plays PCM; allocation-free.
+     */
+    static int mixFrom(PcmSource source, float[] mix, int offset, int frames, float gain) {
+        final int channels = source.channels();
+        final float g = gain * SCALE;
+        int done = 0;
+        try {
+            while (done < frames) {
+                ByteBuffer pcm = source.next(frames - done);
+                if (pcm == null) break;
+                int o = (offset + done) * AudioMixer.CHANNELS;
+                int p = pcm.position();
+                int end = pcm.limit();
+                if (channels == 2) {
+                    for (; p < end; p += 4, o += 2) {
+                        mix[o]     += pcm.getShort(p) * g;
+                        mix[o + 1] += pcm.getShort(p + 2) * g;
+                    }
+                } else {
+                    for (; p < end; p += 2, o += 2) {
+                        float s = pcm.getShort(p) * g;
+                        mix[o]     += s;
+                        mix[o + 1] += s;
+                    }
+                }
+                done = o / AudioMixer.CHANNELS - offset;
+            }
+        } catch (IOException e) {
+            // Treat a read failure like end of stream
+        }
+        return done;
+    }
+}
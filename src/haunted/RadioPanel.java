@@ -9,9 +9,14 @@ import java.net.URL;
  * RadioPanel (Interactive, Power + Tuning + Volume)
  * -------------------------------------------------
  * - Center POWER button toggles the radio on/off.
- * - Right TUNING knob snaps to 1..5 and calls onChannelChanged for each detent.
+ * - Right TUNING knob turns continuously across channel detents (1..5 until setChannelRange says
+ *   otherwise, any number of channels) and calls onChannelChanged whenever the nearest one
+ *   changes; it stays where it is let go, and the mouse wheel steps exactly one channel.
+ *   While it turns, onTuningMotion gets its fractional position and speed, which drive the
+ *   detuned static between stations and the channel prefetcher.
  * - Left VOLUME knob adjusts gain 0..1 and calls onVolumeChanged continuously while dragging.
  * - Dial window shows ghost.gif scaled to "cover" the window (fills completely).
+ * - Morse heard in the mix is decoded and scrolled along the bottom of the dial.
  *
  * Resources expected on classpath:
  *   src/resources/ghost.gif
@@ -63,12 +68,24 @@ public class RadioPanel extends JPanel {
     public interface ChannelListener { void onChannelChanged(int channel); }
     public interface VolumeListener  { void onVolumeChanged(float gain0to1); }
     public interface PowerListener   { void onPowerChanged(boolean on); }
+    /** Knob at {@code position} (fractional channel) turning at {@code velocity} channels/s. */
+    public interface TuningMotionListener { void onTuningMotion(double position, double velocity); }
 
     private ChannelListener onChannelChanged;
     private VolumeListener  onVolumeChanged;
     private PowerListener   onPowerChanged;
+    private TuningMotionListener onTuningMotion;
 
     private int currentChannel = 1;
+    private int firstChannel = 1;        // detent range of the tuning knob
+    private int lastChannel = 5;
+    private double tuneVelocity;         // channels/s, smoothed over the drag
+    private double lastTunePosition;
+    private long lastTuneNanos;
+
+    // --- Decoded Morse (bottom of the dial) ---
+    private MorseDecoder morseDecoder;
+    private String decodedText = "";
 
     public RadioPanel() {
         setOpaque(true);
@@ -88,11 +105,15 @@ public class RadioPanel extends JPanel {
                     if (onPowerChanged != null) onPowerChanged.onPowerChanged(powerOn);
                     // If powering ON, immediately (re)play current channel
                     if (powerOn && onChannelChanged != null) onChannelChanged.onChannelChanged(currentChannel);
+                    if (powerOn) fireTuningMotion(channelPosition(tuningAngleDeg), 0);
                     repaint();
                     return;
                 }
                 if (tuningKnobShape != null && tuningKnobShape.contains(p)) {
                     dragging = DragTarget.TUNING;
+                    lastTunePosition = channelPosition(tuningAngleDeg);
+                    lastTuneNanos = System.nanoTime();
+                    tuneVelocity = 0;
                     return;
                 }
                 if (volumeKnobShape != null && volumeKnobShape.contains(p)) {
@@ -105,6 +126,7 @@ public class RadioPanel extends JPanel {
                 if (dragging == DragTarget.TUNING && tuningKnobShape != null) {
                     // Convert mouse to angle, clamp sweep, update detent channel, notify
                     tuningAngleDeg = clampSweep(angleFromCenter(tuningKnobShape.centerX(), tuningKnobShape.centerY(), e.getX(), e.getY()), 30, 330);
+                    trackTuningMotion();
                     int ch = channelFromAngle(tuningAngleDeg);
                     if (ch != currentChannel) {
                         currentChannel = ch;
@@ -121,8 +143,8 @@ public class RadioPanel extends JPanel {
 
             @Override public void mouseReleased(MouseEvent e) {
                 if (dragging == DragTarget.TUNING) {
-                    // Snap to exact detent on release
-                    tuningAngleDeg = detentAngleForChannel(currentChannel);
+                    // Analog dial: the knob stays where it was let go, possibly a little off-station
+                    if (powerOn) fireTuningMotion(channelPosition(tuningAngleDeg), 0); // at rest: final position, both neighbours ready
                     repaint();
                 }
                 dragging = null;
@@ -138,24 +160,80 @@ public class RadioPanel extends JPanel {
         };
         addMouseListener(mouse);
         addMouseMotionListener(mouse);
+
+        // Wheel over the tuning knob steps one channel; fine control when there are hundreds
+        addMouseWheelListener(e -> {
+            if (tuningKnobShape == null || !tuningKnobShape.contains(e.getPoint())) return;
+            int ch = Math.min(lastChannel, Math.max(firstChannel, currentChannel + e.getWheelRotation()));
+            tuningAngleDeg = detentAngleForChannel(ch);
+            if (ch != currentChannel) {
+                currentChannel = ch;
+                if (powerOn && onChannelChanged != null) onChannelChanged.onChannelChanged(currentChannel);
+            }
+            if (powerOn) fireTuningMotion(currentChannel, 0);
+            repaint();
+        });
     }
 
     // --- Wiring API ---
     public void setOnChannelChanged(ChannelListener l) { this.onChannelChanged = l; }
     public void setOnVolumeChanged(VolumeListener l)   { this.onVolumeChanged  = l; }
     public void setOnPowerChanged(PowerListener l)     { this.onPowerChanged   = l; }
+    public void setOnTuningMotion(TuningMotionListener l) { this.onTuningMotion = l; }
+
+    /**
+     * Channels the tuning knob sweeps, {@code first..last} in equal detents. The current
+     * channel is kept if it is in range, else clamped (without a change callback). EDT only.
+     */
+    public void setChannelRange(int first, int last) {
+        if (last < first) return;
+        firstChannel = first;
+        lastChannel = last;
+        currentChannel = Math.min(last, Math.max(first, currentChannel));
+        tuningAngleDeg = detentAngleForChannel(currentChannel);
+        repaint();
+    }
+
+    /** Decode Morse from everything {@code player} mixes and show it in the dial window. */
+    public void listenForMorse(AudioPlayer player) {
+        morseDecoder = new MorseDecoder(MorseCode.TONE_HZ, MorseCode.DEFAULT_WPM,
+                c -> SwingUtilities.invokeLater(this::refreshDecodedText)); // decoder calls from the audio thread
+        player.getScheduler().setTap(morseDecoder);
+    }
+
+    /** Forget the decoded text, e.g. after a retune. */
+    public void clearDecodedText() {
+        if (morseDecoder != null) morseDecoder.reset();
+        decodedText = "";
+        repaint();
+    }
 
     // Convenience: typical wiring to ChannelManagerSwing+AudioPlayer
     public void wireDefaults(ChannelManagerSwing manager) {
+        if (manager != null && manager.getPlayer() != null) listenForMorse(manager.getPlayer());
+        if (manager != null) {
+            manager.getChannelTable().thenAccept(t ->
+                    SwingUtilities.invokeLater(() -> setChannelRange(t.dialFirst(), t.dialLast())));
+        }
         setOnChannelChanged(ch -> {
-            if (powerOn && manager != null) manager.playChannel(ch);
+            clearDecodedText();
+            if (powerOn && manager != null) manager.tune(ch); // debounced: static until the knob settles
+        });
+        setOnTuningMotion((position, velocity) -> {
+            if (manager == null) return;
+            manager.getPrefetcher().onTuning(position, velocity);
+            if (manager.getPlayer() != null) {
+                manager.getPlayer().setDetune(DetuneStage.forOffset(position - Math.rint(position)));
+            }
         });
         setOnVolumeChanged(gain -> {
             if (manager != null && manager.getPlayer() != null) manager.getPlayer().setVolume(gain);
         });
         setOnPowerChanged(on -> {
-            if (!on && manager != null && manager.getPlayer() != null) {
-                manager.getPlayer().stopAudio();
+            if (!on && manager != null) {
+                manager.stop();
+                if (manager.getPlayer() != null) manager.getPlayer().setDetune(0f); // no static from a radio that is off
+                clearDecodedText();
             } else if (on && manager != null) {
                 manager.playChannel(currentChannel);
             }
@@ -254,6 +332,9 @@ public class RadioPanel extends JPanel {
             drawImageCover(g2, ghostImage, dialR);
         }
 
+        // Decoded Morse along the bottom of the dial
+        if (!decodedText.isEmpty()) drawDecodedText(g2);
+
         // Control strip
         g2.setColor(PANEL_DARK);
         g2.fillRoundRect(ctrlR.x, ctrlR.y, ctrlR.width, ctrlR.height, 16, 16);
@@ -269,7 +350,7 @@ public class RadioPanel extends JPanel {
         // Volume knob
         drawGenericKnob(g2, volumeKnobShape, volumeAngleDeg, "VOL");
 
-        // Tuning knob with detents 1..5
+        // Tuning knob with one detent per channel
         drawTuningKnob(g2, tuningKnobShape, tuningAngleDeg);
 
         g2.dispose();
@@ -277,6 +358,25 @@ public class RadioPanel extends JPanel {
 
     // --- Drawing helpers ---
 
+    private void drawDecodedText(Graphics2D g2) {
+        g2.setFont(new Font(Font.MONOSPACED, Font.BOLD, Math.max(12, dialR.height / 9)));
+        FontMetrics fm = g2.getFontMetrics();
+        String text = decodedText;
+        int maxW = dialR.width - 20;
+        while (text.length() > 1 && fm.stringWidth(text) > maxW) text = text.substring(1); // keep the newest
+        int bandH = fm.getHeight() + 6;
+        g2.setColor(new Color(0, 0, 0, 170));
+        g2.fillRoundRect(dialR.x + 4, dialR.y + dialR.height - bandH - 4, dialR.width - 8, bandH, 12, 12);
+        g2.setColor(NEON);
+        g2.drawString(text, dialR.x + 10, dialR.y + dialR.height - 7 - fm.getDescent());
+    }
+
+    private void refreshDecodedText() {
+        if (morseDecoder == null) return;
+        decodedText = morseDecoder.recentText();
+        repaint(dialR);
+    }
+
     private void drawPowerButton(Graphics2D g2, Ellipse e, boolean on) {
         if (on) {
             g2.setColor(new Color(0, 255, 128, 70));
@@ -333,12 +433,19 @@ public class RadioPanel extends JPanel {
         // dense ticks along 30..330 sweep
         drawArcTicks(g2, e.centerX(), e.centerY(), e.d/2 - 8, 30, 330, 21);
 
-        // detent ticks + labels 1..5
-        for (int ch = 1; ch <= 5; ch++) {
+        // detent ticks + labels; with many channels only every k-th detent, so labels never crowd
+        int count = lastChannel - firstChannel + 1;
+        int labelEvery = Math.max(1, (int) Math.ceil(count / 6.0));
+        int tickEvery = Math.max(1, (int) Math.ceil(count / 60.0));
+        for (int i = 0; i < count; i++) {
+            boolean label = (i % labelEvery == 0 && (i == 0 || count - 1 - i >= labelEvery / 2)) || i == count - 1;
+            if (!label && i % tickEvery != 0) continue;
+            int ch = firstChannel + i;
             double a = detentAngleForChannel(ch);
-            Point p1 = pointOnCircle(e.centerX(), e.centerY(), e.d/2 - 18, a);
+            Point p1 = pointOnCircle(e.centerX(), e.centerY(), e.d/2 - (label ? 18 : 12), a);
             Point p2 = pointOnCircle(e.centerX(), e.centerY(), e.d/2 - 6,  a);
             g2.drawLine(p1.x, p1.y, p2.x, p2.y);
+            if (!label) continue;
 
             String lbl = String.valueOf(ch);
             g2.setFont(g2.getFont().deriveFont(Font.BOLD, 13f));
@@ -396,21 +503,46 @@ public class RadioPanel extends JPanel {
         return angle;
     }
 
-    /** Map 30..330 degrees into 5 equal detents (channels 1..5). */
+    /** Fractional channel under {@code angle}, between detents while the knob is dragged. */
+    private double channelPosition(double angle) {
+        double norm = (angle - 30) / 300.0;
+        return firstChannel + Math.max(0, Math.min(1, norm)) * (lastChannel - firstChannel);
+    }
+
+    /** Update the knob's smoothed speed from the latest drag position and report it. */
+    private void trackTuningMotion() {
+        long now = System.nanoTime();
+        double pos = channelPosition(tuningAngleDeg);
+        double dt = (now - lastTuneNanos) / 1e9;
+        if (dt < 0.005) return; // drag events can come in bursts; wait for a usable interval
+        tuneVelocity = 0.5 * tuneVelocity + 0.5 * (pos - lastTunePosition) / dt;
+        lastTunePosition = pos;
+        lastTuneNanos = now;
+        if (powerOn) fireTuningMotion(pos, tuneVelocity);
+    }
+
+    private void fireTuningMotion(double position, double velocity) {
+        if (onTuningMotion != null) onTuningMotion.onTuningMotion(position, velocity);
+    }
+
+    /** Map 30..330 degrees into equal detents, one per channel firstChannel..lastChannel. */
     private int channelFromAngle(double angle) {
         double min = 30, max = 330;
         double span = max - min;                 // 300°
         double norm = (angle - min) / span;      // 0..1
-        int idx = (int)Math.round(norm * 4.0);   // 0..4
-        return Math.min(5, Math.max(1, idx + 1));
+        int steps = lastChannel - firstChannel;
+        int idx = (int)Math.round(norm * steps); // 0..steps
+        return Math.min(lastChannel, Math.max(firstChannel, firstChannel + idx));
     }
 
-    /** Exact detent angle for channel 1..5 across 30..330 sweep. */
+    /** Exact detent angle for a channel across the 30..330 sweep. */
     private double detentAngleForChannel(int ch) {
-        ch = Math.min(5, Math.max(1, ch));
+        ch = Math.min(lastChannel, Math.max(firstChannel, ch));
         double min = 30, max = 330;
-        double step = (max - min) / 4.0;
-        return min + step * (ch - 1);
+        int steps = lastChannel - firstChannel;
+        if (steps == 0) return min;
+        double step = (max - min) / steps;
+        return min + step * (ch - firstChannel);
     }
 
     /** Map volume knob angle to gain 0..1 with slight easing. */
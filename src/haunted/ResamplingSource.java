@@ -0,0 +1,245 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ResamplingSource
+ *  - Converts any 16-bit PCM source (any sample rate, any channel count) to the mixer's
+ *    fixed device format, so one open line plays every file and no offline conversion
+ *    step is needed.
+ *  - Rate conversion is a polyphase windowed-sinc filter (Kaiser window, 32 taps, 512
+ *    interpolated phases). The cutoff follows the lower of the two Nyquist rates, so
+ *    downsampling does not alias.
+ *  - The read position advances by an exact fraction inRate/outRate (integer phase
+ *    accumulator), so long episodes never drift.
+ *  - Channels: mono stays mono (the mixer spreads it), stereo stays stereo, and anything
+ *    wider is folded to stereo with the extra channels at -3 dB.
+ *  - Allocation-free after construction; all buffers are sized once.
+ */
+final class ResamplingSource implements PcmSource {
+
+    private static final int OUT_RATE = (int) AudioMixer.FORMAT.getSampleRate();
+
+    private static final int HALF_TAPS = 16;     // taps on each side of the centre
+    private static final int PHASES = 512;       // kernel table resolution per input sample
+    private static final double KAISER_BETA = 8.0;
+    private static final double ROLLOFF = 0.97;  // cutoff as a fraction of the lower Nyquist
+    private static final float DOWNMIX = 0.70710677f;
+
+    /** Kernel tables keyed by cutoff; a handful of rates covers every library. */
+    private static final ConcurrentHashMap<Double, float[]> KERNELS = new ConcurrentHashMap<>();
+
+    private final PcmSource in;
+    private final int inRate;
+    private final int inChannels;
+    private final int channels;
+    private final boolean passthrough;
+    private final float[] kernel;
+    private final int step;                 // whole input frames per output frame
+    private final int stepFrac;             // remainder, in units of 1/OUT_RATE
+
+    // Input history as floats, interleaved in the output channel layout
+    private final float[] hist;
+    private final int histCap;              // frames
+    private int histFrames;
+    private int idx;                        // input frame under the filter centre
+    private long phase;                     // fractional position, 0..OUT_RATE-1
+    private int endIdx = -1;                // first padding frame after end of input, or -1
+
+    private final float[] coef = new float[2 * HALF_TAPS];
+    private final ByteBuffer window;
+
+    /**
+     * Return {@code source} itself if it is already in the mixer format, otherwise wrap it.
+     * @param sampleRate native rate of {@code source}
+     */
+    static PcmSource toMixerFormat(PcmSource source, int sampleRate) {
+        if (sampleRate == OUT_RATE && source.channels() <= AudioMixer.CHANNELS) return source;
+        return new ResamplingSource(source, sampleRate);
+    }
+
+    ResamplingSource(PcmSource in, int inRate) {
+        this.in = in;
+        this.inRate = inRate;
+        this.inChannels = in.channels();
+        this.channels = (inChannels == 1) ? 1 : AudioMixer.CHANNELS;
+        this.passthrough = (inRate == OUT_RATE);
+        this.step = inRate / OUT_RATE;
+        this.stepFrac = inRate % OUT_RATE;
+
+        double cutoff = Math.min(1.0, (double) OUT_RATE / inRate) * ROLLOFF;
+        this.kernel = passthrough ? null : KERNELS.computeIfAbsent(cutoff, ResamplingSource::buildKernel);
+
+        // Room for one output buffer's worth of input plus the filter span, twice over
+        int perBuffer = (int) ((long) AudioMixer.BUFFER_FRAMES * inRate / OUT_RATE) + 1;
+        this.histCap = 2 * (perBuffer + 2 * HALF_TAPS + 1);
+        this.hist = new float[histCap * channels];
+        this.window = ByteBuffer.allocate(AudioMixer.BUFFER_FRAMES * channels * 2).order(ByteOrder.LITTLE_ENDIAN);
+        reset();
+    }
+
+    @Override
+    public int channels() {
+        return channels;
+    }
+
+    @Override
+    public long frameLength() {
+        long n = in.frameLength();
+        return (n < 0) ? -1 : n * OUT_RATE / inRate;
+    }
+
+    @Override
+    public boolean seek(long frame) {
+        if (!in.seek(Math.max(0, frame) * inRate / OUT_RATE)) return false;
+        reset();
+        return true;
+    }
+
+    @Override
+    public ByteBuffer next(int maxFrames) throws IOException {
+        final int want = Math.min(maxFrames, AudioMixer.BUFFER_FRAMES);
+        final int c = channels;
+        int out = 0;
+        int o = 0;
+        while (out < want) {
+            if (idx + HALF_TAPS >= histFrames && endIdx < 0) fill();
+            if (endIdx >= 0 && idx >= endIdx) break;
+            if (idx + HALF_TAPS >= histFrames) break; // defensive: never read past the history
+
+            if (passthrough) {
+                int base = idx * c;
+                for (int ch = 0; ch < c; ch++, o += 2) window.putShort(o, toPcm(hist[base + ch]));
+            } else {
+                computeCoefficients();
+                int base = (idx - HALF_TAPS + 1) * c;
+                for (int ch = 0; ch < c; ch++, o += 2) {
+                    float acc = 0f;
+                    for (int k = 0, p = base + ch; k < coef.length; k++, p += c) acc += hist[p] * coef[k];
+                    window.putShort(o, toPcm(acc));
+                }
+            }
+            out++;
+
+            idx += step;
+            phase += stepFrac;
+            if (phase >= OUT_RATE) {
+                phase -= OUT_RATE;
+                idx++;
+            }
+        }
+        if (out == 0) return null;
+        window.limit(o).position(0);
+        return window;
+    }
+
+    @Override
+    public void close() {
+        in.close();
+    }
+
+    // ---------- Internals ----------
+
+    /** Restart the filter at the input's current position: HALF_TAPS-1 frames of silence as history. */
+    private void reset() {
+        Arrays.fill(hist, 0f);
+        histFrames = HALF_TAPS - 1;
+        idx = HALF_TAPS - 1;
+        phase = 0;
+        endIdx = -1;
+    }
+
+    /** Drop history the filter no longer needs and append input (or end-of-input padding). */
+    private void fill() throws IOException {
+        int drop = idx - HALF_TAPS + 1;
+        if (drop > 0) {
+            System.arraycopy(hist, drop * channels, hist, 0, (histFrames - drop) * channels);
+            histFrames -= drop;
+            idx -= drop;
+        }
+
+        int room = histCap - histFrames;
+        ByteBuffer pcm = in.next(room - HALF_TAPS);
+        if (pcm == null) {
+            // End of input: pad with silence so the last frames get a full filter span
+            endIdx = histFrames;
+            Arrays.fill(hist, histFrames * channels, (histFrames + HALF_TAPS) * channels, 0f);
+            histFrames += HALF_TAPS;
+            return;
+        }
+
+        final float scale = 1f / 32768f;
+        int o = histFrames * channels;
+        int p = pcm.position();
+        int end = pcm.limit();
+        int frameBytes = inChannels * 2;
+        if (inChannels <= 2) {
+            for (; p < end; p += 2) hist[o++] = pcm.getShort(p) * scale;
+        } else {
+            // Fold extra channels into both sides at -3 dB, normalized so a full-scale
+            // signal on every channel still fits
+            final float norm = 1f / (1f + DOWNMIX * (inChannels - 2));
+            for (; p + frameBytes <= end; p += frameBytes) {
+                float extra = 0f;
+                for (int ch = 2; ch < inChannels; ch++) extra += pcm.getShort(p + ch * 2);
+                extra *= DOWNMIX;
+                hist[o++] = (pcm.getShort(p) + extra) * norm * scale;
+                hist[o++] = (pcm.getShort(p + 2) + extra) * norm * scale;
+            }
+        }
+        histFrames = o / channels;
+    }
+
+    /** Interpolate the 2*HALF_TAPS filter coefficients for the current fractional phase. */
+    private void computeCoefficients() {
+        final float fracL = (float) ((double) phase * PHASES / OUT_RATE);
+        final int limit = HALF_TAPS * PHASES;
+        for (int k = -HALF_TAPS + 1, i = 0; k <= HALF_TAPS; k++, i++) {
+            float d = Math.abs(k * PHASES - fracL);
+            int j = (int) d;
+            if (j >= limit) {
+                coef[i] = 0f;
+            } else {
+                float a = kernel[j];
+                coef[i] = a + (kernel[j + 1] - a) * (d - j);
+            }
+        }
+    }
+
+    /** Windowed sinc sampled at PHASES points per input sample, for distances 0..HALF_TAPS. */
+    private static float[] buildKernel(double cutoff) {
+        int n = HALF_TAPS * PHASES;
+        float[] k = new float[n + 2];
+        double i0Beta = besselI0(KAISER_BETA);
+        for (int j = 0; j <= n; j++) {
+            double x = (double) j / PHASES;                 // distance in input samples
+            double sinc = (j == 0) ? 1.0 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+            double r = x / HALF_TAPS;
+            double w = besselI0(KAISER_BETA * Math.sqrt(Math.max(0.0, 1.0 - r * r))) / i0Beta;
+            k[j] = (float) (cutoff * sinc * w);
+        }
+        return k; // k[n + 1] stays 0 for the interpolation at the very edge
+    }
+
+    /** Zeroth-order modified Bessel function (series), for the Kaiser window. */
+    private static double besselI0(double x) {
+        double sum = 1.0, term = 1.0, q = x * x / 4.0;
+        for (int m = 1; m < 50; m++) {
+            term *= q / ((double) m * m);
+            sum += term;
+            if (term < 1e-12 * sum) break;
+        }
+        return sum;
+    }
+
+    private static short toPcm(float s) {
+        int v = Math.round(s * 32768f);
+        if (v > 32767) v = 32767;
+        else if (v < -32768) v = -32768;
+        return (short) v;
+    }
+}
@@ -1,46 +1,323 @@
 package haunted;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.*;
 
+/**
+ * ResourceAudio
+ *  - One view over every place audio assets live: the disk audio folder, exploded classpath
+ *    folders (IDE runs, out/...) and jar or zip files on the classpath.
+ *  - Names are classpath-style ("audio/ghost_broadcast.wav"). The disk folder stands in for "audio/"
+ *    and wins over bundled copies; classpath roots follow in class loader order.
+ *  - Every entry is indexed once, on first use (the classpath part once per JVM), so lookups
+ *    and folder listings are map reads rather than file system walks. On disk only the top
+ *    level (the effects) is indexed; subfolders such as episode libraries are listed live.
+ *  - Jar entries are handed out as zip file system Paths, which the player streams in place:
+ *    no temp copies. Stored (uncompressed) entries are memory-mapped straight out of the jar
+ *    (see {@link #map}), so a bundled WAV plays exactly like one on disk.
+ */
 public final class ResourceAudio {
-    private ResourceAudio() {}
 
-    /** Try disk path first (e.g., audio/static.wav). If not found, try classpath (resources/audio/static.wav). */
-    public static Path resolveToPathOrTemp(String diskRelative, String classpathResource) {
-        // 1) disk
-        Path p = Paths.get(diskRelative);
-        if (Files.exists(p)) return p;
+    /** Classpath folder the disk audio folder stands in for. */
+    static final String AUDIO = "audio/";
 
-        // 2) classpath -> copy to temp file so AudioPlayer (Path-based) can stream it
+    /** Where one indexed name lives. */
+    private static final class Entry {
+        final Path path;          // default file system, or the jar's zip file system
+        final Path zip;           // containing jar/zip, null for plain files
+        final long headerOffset;  // local header of a stored zip entry, -1 otherwise
+        final long size;
+        volatile ByteBuffer mapped;
+
+        Entry(Path path, Path zip, long headerOffset, long size) {
+            this.path = path;
+            this.zip = zip;
+            this.headerOffset = headerOffset;
+            this.size = size;
+        }
+    }
+
+    private static volatile NavigableMap<String, Entry> classpath; // shared by every instance
+    private static final Map<Path, FileSystem> ZIPS = new HashMap<>();
+
+    private final Path diskAudioRoot;
+    private volatile NavigableMap<String, Entry> index;
+
+    /** @param diskAudioRoot disk folder standing in for "audio/"; null to use bundled assets only */
+    public ResourceAudio(Path diskAudioRoot) {
+        this.diskAudioRoot = diskAudioRoot;
+    }
+
+    /**
+     * Path for asset {@code name}: on disk, in a classpath folder, or inside a jar. Null if it
+     * exists nowhere. A file added to the disk folder after indexing is still found.
+     */
+    public Path find(String name) {
+        Entry e = index().get(name);
+        if (e != null) return e.path;
+        Path p = disk(name);
+        return (p != null && Files.isRegularFile(p)) ? p : null;
+    }
+
+    /**
+     * Files directly inside {@code folder} (e.g. "audio/spanish_podcast") ending in {@code suffix},
+     * by name. A disk subfolder is listed as it is now (episode libraries are indexed by
+     * ChannelLibrary, not here); bundled copies fill in names it lacks.
+     */
+    public List<Path> list(String folder, String suffix) {
+        String prefix = folder.endsWith("/") ? folder : folder + "/";
+        String ext = suffix.toLowerCase(Locale.ROOT);
+        Map<String, Path> found = new TreeMap<>();
+        collect(index(), prefix, ext, found);
+        Path dir = disk(prefix);
+        if (dir != null && !dir.equals(diskAudioRoot) && Files.isDirectory(dir)) {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path p : ds) {
+                    String name = p.getFileName().toString();
+                    if (name.toLowerCase(Locale.ROOT).endsWith(ext)) found.put(prefix + name, p);
+                }
+            } catch (IOException ignored) {}
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    /** Like {@link #list}, but only copies bundled on the classpath (folders or jars). */
+    public List<Path> listBundled(String folder, String suffix) {
+        String prefix = folder.endsWith("/") ? folder : folder + "/";
+        Map<String, Path> found = new TreeMap<>();
+        collect(classpathIndex(), prefix, suffix.toLowerCase(Locale.ROOT), found);
+        return new ArrayList<>(found.values());
+    }
+
+    /** Indexed asset count. */
+    public int size() {
+        return index().size();
+    }
+
+    @Override
+    public String toString() {
+        return "ResourceAudio[" + (diskAudioRoot == null ? "bundled" : diskAudioRoot) + ", assets=" + size() + "]";
+    }
+
+    /**
+     * The whole of {@code p} memory-mapped if it is a stored (uncompressed) jar entry, else null.
+     * Each call returns an independent big-endian view; the mapping is made once per entry.
+     */
+    static ByteBuffer map(Path p) {
+        if (p.getFileSystem() == FileSystems.getDefault()) return null;
+        String name = p.toString();
+        Entry e = classpathIndex().get(name.startsWith("/") ? name.substring(1) : name);
+        if (e == null || e.headerOffset < 0 || !e.path.equals(p)) return null;
+
+        ByteBuffer m = e.mapped;
+        if (m == null) {
+            try (FileChannel ch = FileChannel.open(e.zip, StandardOpenOption.READ)) {
+                ByteBuffer h = ByteBuffer.allocate(30).order(ByteOrder.LITTLE_ENDIAN);
+                if (!readFully(ch, h, e.headerOffset) || h.getInt(0) != 0x04034b50) return null;
+                long data = e.headerOffset + 30 + (h.getShort(26) & 0xFFFF) + (h.getShort(28) & 0xFFFF);
+                m = ch.map(FileChannel.MapMode.READ_ONLY, data, e.size);
+                e.mapped = m;
+            } catch (IOException | RuntimeException ex) {
+                return null;
+            }
+        }
+        return m.duplicate();
+    }
+
+    // ---------- Internals ----------
+
+    private NavigableMap<String, Entry> index() {
+        NavigableMap<String, Entry> idx = index;
+        if (idx == null) {
+            synchronized (this) {
+                idx = index;
+                if (idx == null) {
+                    idx = new TreeMap<>();
+                    if (diskAudioRoot != null && Files.isDirectory(diskAudioRoot)) {
+                        indexFolder(diskAudioRoot, AUDIO, 1, idx); // effects only; libraries are listed live
+                    }
+                    for (Map.Entry<String, Entry> e : classpathIndex().entrySet()) idx.putIfAbsent(e.getKey(), e.getValue());
+                    index = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    private static void collect(NavigableMap<String, Entry> idx, String prefix, String ext, Map<String, Path> into) {
+        for (Map.Entry<String, Entry> e : idx.subMap(prefix, true, prefix + Character.MAX_VALUE, false).entrySet()) {
+            String name = e.getKey();
+            if (name.indexOf('/', prefix.length()) < 0 && name.toLowerCase(Locale.ROOT).endsWith(ext)) {
+                into.put(name, e.getValue().path);
+            }
+        }
+    }
+
+    private Path disk(String name) {
+        if (diskAudioRoot == null || !name.startsWith(AUDIO)) return null;
+        try {
+            return diskAudioRoot.resolve(name.substring(AUDIO.length()));
+        } catch (InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /** Every "audio/" entry in classpath folders and jars, built on first use. */
+    private static NavigableMap<String, Entry> classpathIndex() {
+        NavigableMap<String, Entry> idx = classpath;
+        if (idx == null) {
+            synchronized (ResourceAudio.class) {
+                idx = classpath;
+                if (idx == null) {
+                    idx = new TreeMap<>();
+                    for (Path root : classpathRoots()) {
+                        try {
+                            if (Files.isDirectory(root)) {
+                                Path dir = root.resolve(AUDIO);
+                                if (Files.isDirectory(dir)) indexFolder(dir, AUDIO, 8, idx);
+                            } else if (Files.isRegularFile(root)) {
+                                indexZip(root, idx);
+                            }
+                        } catch (IOException | RuntimeException e) {
+                            System.out.println("[Audio] cannot index " + root + ": " + e);
+                        }
+                    }
+                    classpath = idx;
+                }
+            }
+        }
+        return idx;
+    }
+
+    /** Folders and jars that hold "audio/" resources, plus this code's own location. */
+    private static Set<Path> classpathRoots() {
+        Set<Path> roots = new LinkedHashSet<>();
+        ClassLoader cl = ResourceAudio.class.getClassLoader();
+        try {
+            for (Enumeration<URL> urls = cl.getResources(AUDIO.substring(0, AUDIO.length() - 1)); urls.hasMoreElements(); ) {
+                Path root = rootOf(urls.nextElement());
+                if (root != null) roots.add(root);
+            }
+        } catch (IOException ignored) {}
+        try {
+            CodeSource src = ResourceAudio.class.getProtectionDomain().getCodeSource();
+            if (src != null && src.getLocation() != null) roots.add(Paths.get(src.getLocation().toURI()));
+        } catch (Exception ignored) {}
+        return roots;
+    }
+
+    /** Classpath root (folder or jar file) containing the resource at {@code url}. */
+    private static Path rootOf(URL url) {
         try {
-            URL url = ResourceAudio.class.getClassLoader().getResource(classpathResource);
-            if (url == null) return null;
-            try (InputStream in = url.openStream()) {
-                Path tmp = Files.createTempFile("hr_", "_" + Paths.get(classpathResource).getFileName());
-                tmp.toFile().deleteOnExit();
-                Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
-                return tmp;
+            if ("file".equalsIgnoreCase(url.getProtocol())) {
+                return Paths.get(url.toURI()).getParent();
+            }
+            if ("jar".equalsIgnoreCase(url.getProtocol())) {
+                URLConnection c = url.openConnection();
+                if (c instanceof JarURLConnection) {
+                    URL jar = ((JarURLConnection) c).getJarFileURL();
+                    if ("file".equalsIgnoreCase(jar.getProtocol())) return Paths.get(jar.toURI());
+                }
             }
         } catch (Exception ignored) {}
         return null;
     }
 
-    /** Returns the directory Path if the disk folder exists; otherwise returns a classpath URL for folder listing. */
-    public static FolderHandle resolveFolder(String diskFolder, String classpathFolder) {
-        Path disk = Paths.get(diskFolder);
-        if (Files.isDirectory(disk)) return FolderHandle.disk(disk);
-        URL url = ResourceAudio.class.getClassLoader().getResource(classpathFolder);
-        return (url != null) ? FolderHandle.cp(url) : null;
+    /** Add every regular file under {@code dir}, up to {@code depth} levels, as {@code prefix + relative name}. */
+    private static void indexFolder(Path dir, String prefix, int depth, Map<String, Entry> into) {
+        try {
+            Files.walkFileTree(dir, EnumSet.noneOf(FileVisitOption.class), depth, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        String rel = dir.relativize(file).toString().replace(File.separatorChar, '/');
+                        into.putIfAbsent(prefix + rel, new Entry(file, null, -1, attrs.size()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            System.out.println("[Audio] cannot index " + dir + ": " + e);
+        }
+    }
+
+    /**
+     * Add the jar's "audio/" entries from its central directory, which also gives each entry's
+     * compression method and local header offset (needed to map stored entries).
+     * ZIP64 archives are skipped.
+     */
+    private static void indexZip(Path zip, Map<String, Entry> into) throws IOException {
+        try (FileChannel ch = FileChannel.open(zip, StandardOpenOption.READ)) {
+            long size = ch.size();
+            int tail = (int) Math.min(size, 22 + 0xFFFF); // end record plus the longest comment
+            ByteBuffer buf = ByteBuffer.allocate(tail).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(ch, buf, size - tail)) return;
+            int eocd = -1;
+            for (int i = tail - 22; i >= 0; i--) {
+                if (buf.getInt(i) == 0x06054b50) {
+                    eocd = i;
+                    break;
+                }
+            }
+            if (eocd < 0) return;
+            int count = buf.getShort(eocd + 10) & 0xFFFF;
+            long cdSize = buf.getInt(eocd + 12) & 0xFFFFFFFFL;
+            long cdOffset = buf.getInt(eocd + 16) & 0xFFFFFFFFL;
+            if (cdOffset == 0xFFFFFFFFL || cdOffset + cdSize > size) return;
+
+            ByteBuffer cd = ByteBuffer.allocate((int) cdSize).order(ByteOrder.LITTLE_ENDIAN);
+            if (!readFully(ch, cd, cdOffset)) return;
+            FileSystem fs = null;
+            for (int p = 0, i = 0; i < count && p + 46 <= cdSize && cd.getInt(p) == 0x02014b50; i++) {
+                int method = cd.getShort(p + 10) & 0xFFFF;
+                long length = cd.getInt(p + 24) & 0xFFFFFFFFL;
+                int nameLen = cd.getShort(p + 28) & 0xFFFF;
+                int extraLen = cd.getShort(p + 30) & 0xFFFF;
+                int commentLen = cd.getShort(p + 32) & 0xFFFF;
+                long local = cd.getInt(p + 42) & 0xFFFFFFFFL;
+                String name = new String(cd.array(), p + 46, nameLen, StandardCharsets.UTF_8);
+                p += 46 + nameLen + extraLen + commentLen;
+
+                if (!name.startsWith(AUDIO) || name.endsWith("/")) continue;
+                if (fs == null) fs = zipFileSystem(zip);
+                into.putIfAbsent(name, new Entry(fs.getPath("/" + name), zip, (method == 0) ? local : -1, length));
+            }
+        }
+    }
+
+    /** One read-only zip file system per jar, open for the life of the JVM. */
+    private static FileSystem zipFileSystem(Path zip) throws IOException {
+        synchronized (ZIPS) {
+            FileSystem fs = ZIPS.get(zip);
+            if (fs == null) {
+                fs = FileSystems.newFileSystem(zip, (ClassLoader) null);
+                ZIPS.put(zip, fs);
+            }
+            return fs;
+        }
     }
 
-    /** Small helper to represent either a disk folder (Path) or a classpath folder (URL:file) */
-    public static final class FolderHandle {
-        public final Path diskPath; public final URL cpUrl;
-        private FolderHandle(Path p, URL u){ this.diskPath=p; this.cpUrl=u; }
-        public static FolderHandle disk(Path p){ return new FolderHandle(p, null); }
-        public static FolderHandle cp(URL u){ return new FolderHandle(null, u); }
-        public boolean isDisk(){ return diskPath != null; }
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long pos) throws IOException {
+        buf.clear();
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, pos + buf.position()) < 0) return false;
+        }
+        return true;
     }
 }
@@ -0,0 +1,75 @@
+package haunted;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * ShuffleBag
+ *  - Draws items in random order without repeats until every item has been drawn once, then
+ *    starts a new round. O(1) per draw: the undrawn items are the front of one array, and a
+ *    draw swaps its pick to the back.
+ *  - The first item of a new round is never the last item of the previous one, so there is
+ *    no back-to-back repeat at the boundary either (with two or more items).
+ *  - {@link #peek} draws ahead without consuming, so a prefetcher can open the item the next
+ *    {@link #next} will return.
+ *
+ * Not thread-safe; ChannelTable.Channel guards its bag (draws on the audio thread, peeks on
+ * the prefetch thread).
+ */
+final class ShuffleBag<T> {
+
+    private final Object[] items;
+    private final Random rng;
+    private int remaining;   // items[0..remaining) are still undrawn this round
+    private T last;
+    private T peeked;
+    private boolean hasPeeked;
+
+    ShuffleBag(List<? extends T> items, Random rng) {
+        this.items = items.toArray();
+        this.rng = rng;
+        this.remaining = this.items.length;
+    }
+
+    int size() {
+        return items.length;
+    }
+
+    /** Next item, or null if the bag is empty. */
+    T next() {
+        if (hasPeeked) {
+            hasPeeked = false;
+            return peeked;
+        }
+        return draw();
+    }
+
+    /** The item the next {@link #next} call will return, or null if the bag is empty. */
+    T peek() {
+        if (!hasPeeked) {
+            peeked = draw();
+            hasPeeked = true;
+        }
+        return peeked;
+    }
+
+    // ---------- Internals ----------
+
+    @SuppressWarnings("unchecked")
+    private T draw() {
+        int n = items.length;
+        if (n == 0) return null;
+        boolean newRound = (remaining == 0);
+        if (newRound) remaining = n;
+
+        int i = rng.nextInt(remaining);
+        if (newRound && n > 1 && items[i] == last) {
+            i = (i + 1 + rng.nextInt(remaining - 1)) % remaining; // any other undrawn item
+        }
+        Object pick = items[i];
+        items[i] = items[--remaining];
+        items[remaining] = pick;
+        last = (T) pick;
+        return last;
+    }
+}
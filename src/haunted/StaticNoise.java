@@ -0,0 +1,137 @@
+package haunted;
+
+/**
+ * Synthesized radio static as a mixer voice, in place of a recorded static.wav: no file, no
+ * decoding, no buffers, so a burst costs nothing to start and never repeats.
+ *  - One xorshift64 step per frame gives both stereo sides 32 random bits each (sides get
+ *    independent noise, like a real receiver), shaped into a {@link Color}:
+ *    HISS (white through a one-pole low-pass), PINK (-3 dB/octave, the natural sound of
+ *    atmospherics) or BROWN (-6 dB/octave, a low rumble).
+ *  - Crackle: random impulses of random size and sign that decay over a few samples, the
+ *    pops and clicks of a weak AM signal. Density is given in crackles per second.
+ *  - Endless unless given a frame budget. The whole generator is a dozen fields, and mixing
+ *    allocates nothing.
+ *
+ * A scalar loop on purpose: the PRNG is a serial dependency chain, and the Vector API is
+ * still an incubator module, which the build does not enable.
+ */
+final class StaticNoise extends AudioMixer.Voice {
+
+    /** Spectral shape of the noise. */
+    enum Color { HISS, PINK, BROWN }
+
+    private static final int RATE = (int) AudioMixer.FORMAT.getSampleRate();
+    private static final float SCALE = 1f / (1L << 31);
+    private static final float SMOOTH = 0.45f;        // HISS one-pole coefficient: lower is duller
+    private static final float PINK_SCALE = 0.18f;    // PINK and BROWN scales match the HISS level
+    private static final float BROWN_LEAK = 0.02f;
+    private static final float BROWN_SCALE = 5.4f;
+    private static final float CRACKLE_DECAY = 0.6f;  // per sample: a pop lasts ~10 samples
+    private static final float CRACKLE_PEAK = 0.9f;
+
+    private final Color color;
+    private final long crackleThreshold; // a frame crackles when its 24-bit hash is below this
+    private long framesLeft;
+
+    private long state;
+    private float left, right;                  // HISS/BROWN filter state
+    private float pl0, pl1, pl2, pr0, pr1, pr2; // PINK filter state
+    private float crack;                        // current crackle impulse
+
+    /** Endless hiss without crackle (inter-station and detune static). */
+    StaticNoise(float gain, long seed) {
+        this(Color.HISS, 0f, gain, seed, Long.MAX_VALUE);
+    }
+
+    /**
+     * @param crackles  average crackle impulses per second (0 for none)
+     * @param maxFrames frames to play before the voice ends on its own
+     */
+    StaticNoise(Color color, float crackles, float gain, long seed, long maxFrames) {
+        super(gain);
+        this.color = color;
+        this.crackleThreshold = (long) (Math.max(0f, crackles) / RATE * (1 << 24));
+        this.framesLeft = maxFrames;
+        this.state = (seed != 0) ? seed : 0x9E3779B97F4A7C15L;
+    }
+
+    @Override
+    protected int mix(float[] mix, int frames, float gain) {
+        int n = (int) Math.min(frames, framesLeft);
+        add(mix, 0, n, gain, gain);
+        framesLeft -= n;
+        return n;
+    }
+
+    /** Add {@code frames} of static to {@code mix}, the gain moving linearly from {@code from} to {@code to}. */
+    void add(float[] mix, int frames, float from, float to) {
+        add(mix, 0, frames, from, to);
+    }
+
+    /** {@link #add(float[], int, float, float)} starting at frame {@code offset} of {@code mix}. */
+    void add(float[] mix, int offset, int frames, float from, float to) {
+        if (frames <= 0) return;
+        final Color c = color;
+        final long threshold = crackleThreshold;
+        long x = state;
+        float l = left, r = right, k = crack;
+        float g = from;
+        final float dg = (to - from) / frames;
+        for (int i = 0, o = offset * 2; i < frames; i++, o += 2) {
+            // xorshift64: one step gives both sides 32 random bits each
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            float wl = (int) x * SCALE;
+            float wr = (int) (x >>> 32) * SCALE;
+
+            float sl, sr;
+            switch (c) { // loop-invariant, so the JIT unswitches it
+                case PINK:
+                    // Paul Kellet's economy pink filter: three leaky poles per side
+                    pl0 = 0.99765f * pl0 + wl * 0.0990460f;
+                    pl1 = 0.96300f * pl1 + wl * 0.2965164f;
+                    pl2 = 0.57000f * pl2 + wl * 1.0526913f;
+                    pr0 = 0.99765f * pr0 + wr * 0.0990460f;
+                    pr1 = 0.96300f * pr1 + wr * 0.2965164f;
+                    pr2 = 0.57000f * pr2 + wr * 1.0526913f;
+                    sl = (pl0 + pl1 + pl2 + wl * 0.1848f) * PINK_SCALE;
+                    sr = (pr0 + pr1 + pr2 + wr * 0.1848f) * PINK_SCALE;
+                    break;
+                case BROWN:
+                    // Leaky integrator, so the random walk never drifts off
+                    l = (l + BROWN_LEAK * wl) / (1f + BROWN_LEAK);
+                    r = (r + BROWN_LEAK * wr) / (1f + BROWN_LEAK);
+                    sl = l * BROWN_SCALE;
+                    sr = r * BROWN_SCALE;
+                    break;
+                default:
+                    l += SMOOTH * (wl - l);
+                    r += SMOOTH * (wr - r);
+                    sl = l;
+                    sr = r;
+                    break;
+            }
+
+            if (threshold > 0) {
+                // A hash of the same step decides crackles, decorrelated from the noise itself
+                long h = (x * 0x9E3779B97F4A7C15L) >>> 40;
+                if (h < threshold) {
+                    float size = CRACKLE_PEAK * (0.25f + 0.75f * (x >>> 56) / 255f);
+                    k = ((h & 1) == 0) ? size : -size;
+                }
+                sl += k;
+                sr += k;
+                k *= CRACKLE_DECAY;
+            }
+
+            g += dg;
+            mix[o]     += sl * g;
+            mix[o + 1] += sr * g;
+        }
+        state = x;
+        left = l;
+        right = r;
+        crack = k;
+    }
+}
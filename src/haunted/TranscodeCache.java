@@ -0,0 +1,401 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TranscodeCache
+ *  - Keeps a device-native copy (16-bit PCM at the mixer rate) of every library episode that
+ *    is not already in that format, in an on-disk cache directory. Later plays map the copy
+ *    directly: no decoding, no resampling.
+ *  - Copies are named by the SHA-256 of the source content, so renamed or duplicated episodes
+ *    share one copy. An index (index.tsv) records, per source path: content hash, size,
+ *    mtime, frame count and format.
+ *  - A source whose size or mtime no longer matches its index entry is stale: it is rehashed
+ *    and, if the content really changed, transcoded again — always in the background, by a
+ *    small bounded worker pool. Until then the original is played with runtime conversion.
+ *  - Files that are already plain PCM at the mixer rate are never copied.
+ *
+ * Only files handed to {@link #prepare} (the library scan) are ever transcoded; one-off
+ * effects and benchmark fixtures just miss. Assets inside jars are never cached.
+ */
+public final class TranscodeCache {
+
+    private static final String INDEX = "index.tsv";
+    private static final String INDEX_HEADER = "# haunted transcode index v1: hash size mtime frames rate channels bits path";
+    private static final int OUT_RATE = (int) AudioMixer.FORMAT.getSampleRate();
+    private static final int QUEUE_LIMIT = 1024;
+    private static final int HASH_LOCK_STRIPES = 64; // fixed: a content hash always maps to the same lock
+
+    /** One indexed source and the format of its device-native copy. */
+    private static final class Entry {
+        final String hash;
+        final long size;
+        final long mtime;
+        final long frames;
+        final int sampleRate;
+        final int channels;
+        final int bits;
+
+        Entry(String hash, long size, long mtime, long frames, int sampleRate, int channels, int bits) {
+            this.hash = hash;
+            this.size = size;
+            this.mtime = mtime;
+            this.frames = frames;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.bits = bits;
+        }
+
+        boolean matches(BasicFileAttributes a) {
+            return a.size() == size && a.lastModifiedTime().toMillis() == mtime;
+        }
+
+        Entry touched(BasicFileAttributes a) {
+            return new Entry(hash, a.size(), a.lastModifiedTime().toMillis(), frames, sampleRate, channels, bits);
+        }
+    }
+
+    private final Path dir;          // null: cache disabled
+    private final int threads;
+
+    private final Map<String, Entry> index = new ConcurrentHashMap<>();
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    private final Object[] hashLocks = new Object[HASH_LOCK_STRIPES]; // one transcode per content
+    private volatile boolean loaded;
+    private ThreadPoolExecutor workers;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong transcoded = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param dir     cache directory (created on demand); null disables the cache
+     * @param threads background transcoding workers
+     */
+    public TranscodeCache(Path dir, int threads) {
+        this.dir = dir;
+        this.threads = Math.max(1, threads);
+        for (int i = 0; i < hashLocks.length; i++) hashLocks[i] = new Object();
+    }
+
+    /**
+     * Cache configured from system properties:
+     *   haunted.transcodeCache.dir      cache directory (default ~/.haunted-radio/transcoded, "" disables)
+     *   haunted.transcodeCache.threads  background workers (default 1–2 depending on cores)
+     */
+    public static TranscodeCache fromSystemProperties() {
+        String d = System.getProperty("haunted.transcodeCache.dir",
+                Paths.get(System.getProperty("user.home", "."), ".haunted-radio", "transcoded").toString());
+        int cores = Runtime.getRuntime().availableProcessors();
+        int threads = Integer.getInteger("haunted.transcodeCache.threads", Math.max(1, Math.min(2, cores / 2)));
+        return new TranscodeCache(d.isEmpty() ? null : Paths.get(d), threads);
+    }
+
+    /**
+     * Device-native copy of {@code source}, ready to be memory-mapped, or null if there is none
+     * (yet). A stale index entry is scheduled for a background rebuild.
+     */
+    public Path lookup(Path source) {
+        if (dir == null || !onDisk(source)) return null;
+        ensureLoaded();
+        Path abs = source.toAbsolutePath().normalize();
+        Entry e = index.get(abs.toString());
+        if (e == null) return null;
+
+        BasicFileAttributes attrs = attributes(abs);
+        Path copy = copyFile(e.hash);
+        if (attrs != null && e.matches(attrs) && Files.isRegularFile(copy)) {
+            hits.incrementAndGet();
+            return copy;
+        }
+        misses.incrementAndGet();
+        schedule(abs);
+        return null;
+    }
+
+    /** Queue every source without an up-to-date copy for background transcoding. */
+    public void prepare(Collection<Path> sources) {
+        if (dir == null) return;
+        ensureLoaded();
+        for (Path p : sources) {
+            if (!onDisk(p)) continue;
+            Path abs = p.toAbsolutePath().normalize();
+            Entry e = index.get(abs.toString());
+            BasicFileAttributes attrs = attributes(abs);
+            if (attrs == null) continue;
+            if (e != null && e.matches(attrs) && Files.isRegularFile(copyFile(e.hash))) continue;
+            schedule(abs);
+        }
+    }
+
+    /** Block until no transcoding is queued or running, up to {@code millis}; true if idle. */
+    public boolean awaitIdle(long millis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (!pending.isEmpty()) {
+            if (System.nanoTime() > deadline) return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    // ---------- Stats ----------
+
+    public long hits()        { return hits.get(); }
+    /** Lookups of indexed sources whose copy was stale or missing. */
+    public long misses()      { return misses.get(); }
+    public long transcoded()  { return transcoded.get(); }
+    public long failures()    { return failures.get(); }
+    public int pending()      { return pending.size(); }
+    public int size()         { return index.size(); }
+
+    @Override
+    public String toString() {
+        return "TranscodeCache[" + (dir == null ? "disabled" : dir) + ", hits=" + hits() + ", misses=" + misses()
+                + ", transcoded=" + transcoded() + ", failures=" + failures() + ", pending=" + pending()
+                + ", entries=" + size() + "]";
+    }
+
+    // ---------- Internals ----------
+
+    private void schedule(Path abs) {
+        String key = abs.toString();
+        if (!pending.add(key)) return; // already queued
+        try {
+            pool().execute(() -> {
+                try {
+                    rebuild(abs);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                    System.out.println("[Audio] transcode failed for " + abs.getFileName() + ": " + e.getMessage());
+                } finally {
+                    pending.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException full) {
+            pending.remove(key); // queue full: the next scan or lookup tries again
+        }
+    }
+
+    private synchronized ThreadPoolExecutor pool() {
+        if (workers == null) {
+            AtomicInteger n = new AtomicInteger();
+            workers = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(QUEUE_LIMIT), r -> {
+                        Thread t = new Thread(r, "transcode-" + n.incrementAndGet());
+                        t.setDaemon(true);
+                        t.setPriority(Thread.MIN_PRIORITY); // never compete with the audio thread
+                        return t;
+                    });
+            workers.allowCoreThreadTimeOut(true);
+        }
+        return workers;
+    }
+
+    /** Worker: bring the copy of {@code abs} up to date (hash, reuse or transcode, then index). */
+    private void rebuild(Path abs) throws Exception {
+        BasicFileAttributes attrs = attributes(abs);
+        if (attrs == null) return;
+        String key = abs.toString();
+        Entry old = index.get(key);
+        if (old != null && old.matches(attrs) && Files.isRegularFile(copyFile(old.hash))) return;
+
+        // Already device-native: play the original mapped, nothing to store
+        WavFile wav = WavFile.open(abs);
+        if (wav != null && wav.header().sampleRate == OUT_RATE && wav.header().channels <= AudioMixer.CHANNELS) {
+            if (old != null) forget(key, old);
+            return;
+        }
+
+        String hash = sha256(abs);
+        Entry e;
+        if (old != null && old.hash.equals(hash) && Files.isRegularFile(copyFile(hash))) {
+            e = old.touched(attrs); // touched but unchanged
+        } else {
+            // Duplicates scanned by two workers at once must not both transcode the same content
+            synchronized (lockFor(hash)) {
+                Entry twin = findByHash(hash);
+                e = (twin != null) ? twin.touched(attrs) : transcode(abs, hash, attrs);
+                if (e != null) index.put(key, e);
+            }
+            if (e == null) return;
+        }
+        index.put(key, e);
+        if (old != null && !old.hash.equals(e.hash)) deleteIfUnreferenced(old.hash);
+        saveIndex();
+    }
+
+    /** Convert {@code abs} to the mixer format into {@code <hash>.wav}; null if it can't be decoded. */
+    private Entry transcode(Path abs, String hash, BasicFileAttributes attrs) throws IOException {
+        PcmSource src = AudioPlayer.openConverted(abs, null);
+        if (src == null) {
+            failures.incrementAndGet();
+            return null;
+        }
+        Files.createDirectories(dir);
+        Path tmp = Files.createTempFile(dir, hash, ".part");
+        long frames = 0;
+        int channels = src.channels();
+        WavFileSink out = new WavFileSink(tmp, false);
+        boolean moved = false;
+        try {
+            try (PcmSource in = src) {
+                out.open(new AudioFormat(OUT_RATE, 16, channels, true, false));
+                byte[] chunk = new byte[AudioMixer.BUFFER_FRAMES * channels * 2];
+                ByteBuffer b;
+                while ((b = in.next(AudioMixer.BUFFER_FRAMES)) != null) {
+                    int n = b.remaining();
+                    b.get(chunk, 0, n);
+                    out.write(chunk, 0, n);
+                    frames += n / (channels * 2);
+                }
+            } finally {
+                out.close();
+            }
+            move(tmp, copyFile(hash));
+            moved = true;
+        } finally {
+            // Any failure, decoder RuntimeExceptions included, must not leave a .part behind
+            if (!moved) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // best effort: the original failure is what the caller needs to see
+                }
+            }
+        }
+        transcoded.incrementAndGet();
+        return new Entry(hash, attrs.size(), attrs.lastModifiedTime().toMillis(), frames, OUT_RATE, channels, 16);
+    }
+
+    /** Lock serializing work on content {@code hash}; unrelated hashes may share one, rarely. */
+    private Object lockFor(String hash) {
+        return hashLocks[(hash.hashCode() & 0x7fffffff) % hashLocks.length];
+    }
+
+    private Entry findByHash(String hash) {
+        if (!Files.isRegularFile(copyFile(hash))) return null;
+        for (Entry e : index.values()) {
+            if (e.hash.equals(hash)) return e;
+        }
+        return null;
+    }
+
+    private void forget(String key, Entry old) throws IOException {
+        index.remove(key);
+        deleteIfUnreferenced(old.hash);
+        saveIndex();
+    }
+
+    private void deleteIfUnreferenced(String hash) {
+        for (Entry e : index.values()) {
+            if (e.hash.equals(hash)) return;
+        }
+        try {
+            Files.deleteIfExists(copyFile(hash));
+        } catch (IOException ignored) {
+        }
+    }
+
+    private Path copyFile(String hash) {
+        return dir.resolve(hash + ".wav");
+    }
+
+    private synchronized void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        Path file = dir.resolve(INDEX);
+        if (!Files.isRegularFile(file)) return;
+        try {
+            List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] f = line.split("\t", 8);
+                if (f.length < 8) continue;
+                index.put(f[7], new Entry(f[0], Long.parseLong(f[1]), Long.parseLong(f[2]), Long.parseLong(f[3]),
+                        Integer.parseInt(f[4]), Integer.parseInt(f[5]), Integer.parseInt(f[6])));
+            }
+        } catch (Exception e) {
+            // Corrupt index: start over, copies get rebuilt as they are needed
+            System.out.println("[Audio] transcode index unreadable, rebuilding: " + e.getMessage());
+            index.clear();
+        }
+    }
+
+    /** Rewrite the index atomically (temp file + rename), so a crash never leaves half an index. */
+    private synchronized void saveIndex() throws IOException {
+        Files.createDirectories(dir);
+        Path tmp = dir.resolve(INDEX + ".tmp");
+        try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            w.write(INDEX_HEADER);
+            w.newLine();
+            for (Map.Entry<String, Entry> me : index.entrySet()) {
+                Entry e = me.getValue();
+                w.write(e.hash + "\t" + e.size + "\t" + e.mtime + "\t" + e.frames + "\t" + e.sampleRate
+                        + "\t" + e.channels + "\t" + e.bits + "\t" + me.getKey());
+                w.newLine();
+            }
+        }
+        move(tmp, dir.resolve(INDEX));
+    }
+
+    private static void move(Path from, Path to) throws IOException {
+        try {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean onDisk(Path p) {
+        return p.getFileSystem() == FileSystems.getDefault();
+    }
+
+    private static BasicFileAttributes attributes(Path p) {
+        try {
+            return Files.readAttributes(p, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String sha256(Path p) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("SHA-256");
+        ByteBuffer buf = ByteBuffer.allocateDirect(1 << 16);
+        try (FileChannel ch = FileChannel.open(p, StandardOpenOption.READ)) {
+            while (ch.read(buf) != -1) {
+                buf.flip();
+                md.update(buf);
+                buf.clear();
+            }
+        }
+        StringBuilder sb = new StringBuilder(64);
+        for (byte b : md.digest()) sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return sb.toString();
+    }
+}
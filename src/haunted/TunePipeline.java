@@ -0,0 +1,140 @@
+package haunted;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * TunePipeline
+ *  - Sits between the tuning knob and the channel player. A drag across many detents fires a
+ *    burst of channel changes; only the channel the knob settles on is actually opened.
+ *  - The first change of a burst swaps the program for synthesized inter-station static
+ *    (StaticNoise: no file, no decode), which plays while the knob keeps moving.
+ *  - Every change restarts the settle timer; when the knob has rested for the settle window,
+ *    the last channel is committed, replacing the static in one scheduler PLAY.
+ *  - Starting the static supersedes a commit still opening its file, and a commit is handed
+ *    over under the same lock cancel() takes, so neither a stale channel nor stale static can
+ *    land after a newer drag or a Stop.
+ *  - Counts requests, commits and coalesced changes; AudioPlayer counts the sources that
+ *    were really opened and closed.
+ *
+ * Settle window from the system property haunted.tune.settleMillis (default 150 ms).
+ */
+public final class TunePipeline {
+
+    private static final float STATIC_GAIN = 0.22f;
+
+    private final IntFunction<CompletableFuture<Void>> commit;
+    private final Consumer<AudioMixer.Voice> offStation;
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "tune-settle");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile long settleMillis;
+
+    // guarded by this
+    private int target;
+    private long change;             // bumped by every tune and cancel, so a stale timer is ignored
+    private ScheduledFuture<?> pending;
+    private StaticNoise interStation;
+    private long seed = System.nanoTime();
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong commits = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong staticStarts = new AtomicLong();
+
+    /**
+     * @param commit       plays a channel for real (ChannelManagerSwing::playChannel)
+     * @param offStation   plays the inter-station static as the program, superseding any
+     *                     channel request still in flight
+     * @param settleMillis how long the knob must rest before its channel is opened
+     */
+    public TunePipeline(IntFunction<CompletableFuture<Void>> commit, Consumer<AudioMixer.Voice> offStation, long settleMillis) {
+        this.commit = commit;
+        this.offStation = offStation;
+        this.settleMillis = Math.max(0, settleMillis);
+    }
+
+    /** Pipeline with the settle window from system properties. */
+    public static TunePipeline fromSystemProperties(IntFunction<CompletableFuture<Void>> commit, Consumer<AudioMixer.Voice> offStation) {
+        return new TunePipeline(commit, offStation, Long.getLong("haunted.tune.settleMillis", 150));
+    }
+
+    /** The knob reached channel {@code ch}. Returns at once; any thread. */
+    public synchronized void tune(int ch) {
+        requests.incrementAndGet();
+        target = ch;
+        final long c = ++change;
+        if (pending != null && pending.cancel(false)) {
+            coalesced.incrementAndGet(); // the previous channel was never opened
+        } else {
+            // First change of a burst: off station until the knob settles; a commit from the
+            // previous burst that is still opening its file is dropped
+            interStation = new StaticNoise(STATIC_GAIN, seed++);
+            offStation.accept(interStation);
+            staticStarts.incrementAndGet();
+        }
+        pending = timer.schedule(() -> settle(c), settleMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /** Drop a pending change and any static it started, e.g. on Stop or power off. */
+    public synchronized void cancel() {
+        if (pending != null) pending.cancel(false);
+        pending = null;
+        change++;
+        if (interStation != null) interStation.stop();
+        interStation = null;
+    }
+
+    public void setSettleMillis(long millis) {
+        settleMillis = Math.max(0, millis);
+    }
+
+    public long getSettleMillis() {
+        return settleMillis;
+    }
+
+    // ---------- Stats ----------
+    /** Channel changes reported by the knob. */
+    public long requests()     { return requests.get(); }
+    /** Channels actually played once the knob settled. */
+    public long commits()      { return commits.get(); }
+    /** Changes superseded before they settled, so never opened. */
+    public long coalesced()    { return coalesced.get(); }
+    /** Bursts that started inter-station static. */
+    public long staticStarts() { return staticStarts.get(); }
+
+    @Override
+    public String toString() {
+        return "TunePipeline[settle=" + settleMillis + " ms, requests=" + requests() + ", commits=" + commits()
+                + ", coalesced=" + coalesced() + ", staticStarts=" + staticStarts() + "]";
+    }
+
+    // ---------- Internals ----------
+
+    /** Timer thread: the knob has rested; play its channel. */
+    private void settle(long c) {
+        CompletableFuture<Void> played;
+        StaticNoise hiss;
+        synchronized (this) {
+            if (c != change) return; // a later change or a cancel got here first
+            pending = null;
+            hiss = interStation;
+            interStation = null;
+            // Still under the lock: a cancel() or tune() after this point supersedes the request
+            played = commit.apply(target);
+        }
+        commits.incrementAndGet();
+        // The channel's PLAY replaces the static; a channel with nothing to play just ends it
+        played.whenComplete((v, e) -> {
+            if (hiss != null) hiss.stop();
+        });
+    }
+}
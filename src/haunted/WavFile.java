@@ -0,0 +1,227 @@
+package haunted;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * WavFile
+ *  - Zero-copy reader for plain 16-bit PCM WAVs at any sample rate and channel count.
+ *  - Walks the RIFF chunk list with small positional reads, validates RIFF/WAVE, fmt and data,
+ *    then maps only the data chunk with FileChannel.map.
+ *  - Sources hand out slices of the mapping directly, and can seek to any frame in O(1).
+ *  - WAVs stored uncompressed inside a jar are read the same way, from the mapping
+ *    ResourceAudio makes of the entry.
+ *
+ * Anything this reader does not handle (compressed codecs, 8/24/32-bit samples, data chunks
+ * over 2 GiB) makes {@link #open} return null, and callers fall back to Java Sound.
+ */
+final class WavFile {
+
+    private static final int WAVE_FORMAT_PCM = 0x0001;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /** Parsed fmt + data chunk description. */
+    static final class Header {
+        final int formatTag;      // 1 = PCM (EXTENSIBLE is resolved to its sub-format)
+        final int channels;
+        final int sampleRate;
+        final int bitsPerSample;
+        final int blockAlign;     // bytes per frame
+        final long dataOffset;    // absolute file offset of the first sample
+        final long dataLength;    // bytes of sample data (clamped to the file size)
+
+        Header(int formatTag, int channels, int sampleRate, int bitsPerSample,
+               int blockAlign, long dataOffset, long dataLength) {
+            this.formatTag = formatTag;
+            this.channels = channels;
+            this.sampleRate = sampleRate;
+            this.bitsPerSample = bitsPerSample;
+            this.blockAlign = blockAlign;
+            this.dataOffset = dataOffset;
+            this.dataLength = dataLength;
+        }
+
+        long frames() { return dataLength / blockAlign; }
+
+        /** True if {@link #frames} really counts frames; for compressed codecs it counts blocks. */
+        boolean knownFrames() { return formatTag == WAVE_FORMAT_PCM; }
+
+        /** True for signed 16-bit little-endian PCM, which we can stream without conversion. */
+        boolean isPcm16() {
+            return formatTag == WAVE_FORMAT_PCM && bitsPerSample == 16 && blockAlign == channels * 2;
+        }
+    }
+
+    private final Path path;
+    private final Header header;
+    private final ByteBuffer data; // read-only mapping of the data chunk, little-endian
+
+    private WavFile(Path path, Header header, ByteBuffer data) {
+        this.path = path;
+        this.header = header;
+        this.data = data;
+    }
+
+    Path path()      { return path; }
+    Header header()  { return header; }
+    long frames()    { return header.frames(); }
+
+    /**
+     * Map {@code wav} if it is a 16-bit PCM WAV we can read directly.
+     * Returns null for anything else (including I/O errors); use Java Sound then.
+     */
+    static WavFile open(Path wav) {
+        if (wav.getFileSystem() != FileSystems.getDefault()) {
+            ByteBuffer file = ResourceAudio.map(wav); // null unless a stored jar entry
+            return (file != null) ? open(wav, file) : null;
+        }
+        try (FileChannel ch = FileChannel.open(wav, StandardOpenOption.READ)) {
+            Header h = readHeader(ch);
+            if (h == null || !h.isPcm16() || h.dataLength > Integer.MAX_VALUE) return null;
+            // The mapping stays valid after the channel is closed
+            ByteBuffer data = ch.map(FileChannel.MapMode.READ_ONLY, h.dataOffset, h.dataLength)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            return new WavFile(wav, h, data);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse the RIFF header through positional reads only (a few dozen bytes per file).
+     * Returns null if the file is not a well-formed WAVE with fmt before data.
+     */
+    static Header readHeader(FileChannel ch) throws IOException {
+        return readHeader(ch.size(), (buf, pos, len) -> readFully(ch, buf, pos, len));
+    }
+
+    /**
+     * {@link #readHeader(FileChannel)} starting with a single positional read of up to
+     * {@code scratch.capacity()} bytes; a few hundred bytes hold the fmt and data chunk headers
+     * of almost every file, so library scans cost one read per file. Longer headers (big
+     * metadata chunks) fall back to further reads.
+     */
+    static Header readHeader(FileChannel ch, ByteBuffer scratch) throws IOException {
+        long size = ch.size();
+        scratch.clear().limit((int) Math.min(scratch.capacity(), size));
+        while (scratch.hasRemaining() && ch.read(scratch, scratch.position()) >= 0) {
+            // short reads are rare on files; keep going until the prefix is in
+        }
+        final int have = scratch.position();
+        return readHeader(size, (buf, pos, len) -> {
+            if (pos + len > have) return readFully(ch, buf, pos, len);
+            buf.clear().limit(len);
+            buf.put(0, scratch, (int) pos, len);
+            return true;
+        });
+    }
+
+    /** Positional read of {@code len} bytes at {@code pos} into {@code buf} from index 0; false at end of file. */
+    private interface Bytes {
+        boolean read(ByteBuffer buf, long pos, int len) throws IOException;
+    }
+
+    private static Header readHeader(long size, Bytes in) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+
+        if (!in.read(buf, 0, 12)) return null;
+        if (buf.getInt(0) != 0x46464952 /* RIFF */ || buf.getInt(8) != 0x45564157 /* WAVE */) return null;
+
+        int formatTag = -1, channels = 0, sampleRate = 0, bits = 0, blockAlign = 0;
+        long pos = 12;
+        while (pos + 8 <= size) {
+            if (!in.read(buf, pos, 8)) return null;
+            int id = buf.getInt(0);
+            long len = buf.getInt(4) & 0xFFFFFFFFL;
+            long body = pos + 8;
+
+            if (id == 0x20746d66 /* "fmt " */) {
+                if (len < 16 || !in.read(buf, body, (int) Math.min(len, 40))) return null;
+                formatTag = buf.getShort(0) & 0xFFFF;
+                channels = buf.getShort(2) & 0xFFFF;
+                sampleRate = buf.getInt(4);
+                blockAlign = buf.getShort(12) & 0xFFFF;
+                bits = buf.getShort(14) & 0xFFFF;
+                if (formatTag == WAVE_FORMAT_EXTENSIBLE && len >= 26) {
+                    // Sub-format GUID starts at offset 24; its first two bytes are the real tag
+                    formatTag = buf.getShort(24) & 0xFFFF;
+                }
+                if (channels <= 0 || sampleRate <= 0 || blockAlign <= 0) return null;
+            } else if (id == 0x61746164 /* "data" */) {
+                if (formatTag < 0) return null; // data before fmt is not valid WAVE
+                // Streaming encoders may leave the size at 0 or 0xFFFFFFFF: trust the file length
+                long avail = size - body;
+                long dataLen = (len == 0 || len > avail) ? avail : len;
+                dataLen -= dataLen % blockAlign;
+                return new Header(formatTag, channels, sampleRate, bits, blockAlign, body, dataLen);
+            }
+            pos = body + len + (len & 1); // chunks are word-aligned
+        }
+        return null;
+    }
+
+    /** A new independent reader positioned at frame 0. */
+    PcmSource source() {
+        return new MappedSource();
+    }
+
+    // ---------- Internals ----------
+
+    /** {@link #open(Path)} for a whole file that is already mapped (position 0 to limit). */
+    private static WavFile open(Path wav, ByteBuffer file) {
+        try {
+            Header h = readHeader(file.limit(), (buf, pos, len) -> {
+                if (pos + len > file.limit()) return false;
+                buf.clear().limit(len);
+                buf.put(0, file, (int) pos, len);
+                return true;
+            });
+            if (h == null || !h.isPcm16()) return null;
+            ByteBuffer data = file.duplicate();
+            data.limit((int) (h.dataOffset + h.dataLength)).position((int) h.dataOffset);
+            return new WavFile(wav, h, data.slice().order(ByteOrder.LITTLE_ENDIAN));
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static boolean readFully(FileChannel ch, ByteBuffer buf, long pos, int len) throws IOException {
+        buf.clear().limit(len);
+        while (buf.hasRemaining()) {
+            int n = ch.read(buf, pos + buf.position());
+            if (n < 0) return false;
+        }
+        return true;
+    }
+
+    /** Hands out windows of the mapped data chunk; seeking just moves an index. */
+    private final class MappedSource implements PcmSource {
+        private final ByteBuffer window = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        private int pos;
+
+        @Override public int channels() { return header.channels; }
+
+        @Override public long frameLength() { return header.frames(); }
+
+        @Override public ByteBuffer next(int maxFrames) {
+            int bytes = Math.min(window.capacity() - pos, maxFrames * header.blockAlign);
+            if (bytes <= 0) return null;
+            window.limit(pos + bytes).position(pos);
+            pos += bytes;
+            return window;
+        }
+
+        @Override public boolean seek(long frame) {
+            long clamped = Math.max(0, Math.min(frame, header.frames()));
+            pos = (int) (clamped * header.blockAlign);
+            return true;
+        }
+
+        @Override public void close() {}
+    }
+}
@@ -0,0 +1,100 @@
+package haunted;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the mix to a 16-bit PCM WAV file. The RIFF and data sizes are patched in on close,
+ * so the file is valid even for sessions of unknown length. With realtime=false a
+ * session renders as fast as the CPU allows.
+ */
+public final class WavFileSink implements AudioSink {
+
+    private static final int HEADER_BYTES = 44;
+
+    private final Path file;
+    private final boolean realtime;
+    private OutputStream out;
+    private AudioFormat format;
+    private long dataBytes;
+
+    public WavFileSink(Path file, boolean realtime) {
+        this.file = file;
+        this.realtime = realtime;
+    }
+
+    @Override
+    public void open(AudioFormat format) throws IOException {
+        if (format.getSampleSizeInBits() != 16 || format.isBigEndian()) {
+            throw new IOException("WavFileSink writes 16-bit little-endian PCM only");
+        }
+        this.format = format;
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), 1 << 16);
+        out.write(new byte[HEADER_BYTES]); // placeholder, filled in by close()
+        dataBytes = 0;
+    }
+
+    @Override
+    public void write(byte[] buf, int off, int len) throws IOException {
+        out.write(buf, off, len);
+        dataBytes += len;
+    }
+
+    @Override
+    public boolean isRealtime() {
+        return realtime;
+    }
+
+    @Override
+    public void close() {
+        if (out == null) return;
+        try {
+            out.close();
+            try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                raf.write(header(format, dataBytes));
+            }
+        } catch (IOException e) {
+            System.out.println("[Audio] could not finish " + file + ": " + e.getMessage());
+        } finally {
+            out = null;
+        }
+    }
+
+    /** Canonical 44-byte PCM WAV header for {@code dataBytes} of sample data. */
+    static byte[] header(AudioFormat format, long dataBytes) {
+        int channels = format.getChannels();
+        int rate = (int) format.getSampleRate();
+        int blockAlign = format.getFrameSize();
+        long riffSize = Math.min(0xFFFFFFFFL, 36 + dataBytes);
+        long dataSize = Math.min(0xFFFFFFFFL, dataBytes);
+
+        byte[] h = new byte[HEADER_BYTES];
+        putAscii(h, 0, "RIFF");
+        putLE(h, 4, riffSize, 4);
+        putAscii(h, 8, "WAVE");
+        putAscii(h, 12, "fmt ");
+        putLE(h, 16, 16, 4);              // fmt chunk size
+        putLE(h, 20, 1, 2);               // PCM
+        putLE(h, 22, channels, 2);
+        putLE(h, 24, rate, 4);
+        putLE(h, 28, (long) rate * blockAlign, 4);
+        putLE(h, 32, blockAlign, 2);
+        putLE(h, 34, 16, 2);
+        putAscii(h, 36, "data");
+        putLE(h, 40, dataSize, 4);
+        return h;
+    }
+
+    private static void putAscii(byte[] b, int at, String s) {
+        for (int i = 0; i < s.length(); i++) b[at + i] = (byte) s.charAt(i);
+    }
+
+    private static void putLE(byte[] b, int at, long v, int bytes) {
+        for (int i = 0; i < bytes; i++) b[at + i] = (byte) (v >>> (8 * i));
+    }
+}